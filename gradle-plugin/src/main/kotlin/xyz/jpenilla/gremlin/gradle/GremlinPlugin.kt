@@ -106,7 +106,7 @@ class GremlinPlugin : Plugin<Project> {
             repositories
         }
         return repositoryHandler.withType(MavenArtifactRepository::class)
-            .filter { it.url.scheme.equals("http", true) || it.url.scheme.equals("https", true) }
+            .filter { repo -> listOf("http", "https", "file").any { repo.url.scheme.equals(it, true) } }
             .map { it.url.toString() }
     }
 
@@ -81,12 +81,33 @@ abstract class WriteDependencySet : DefaultTask() {
     @get:Nested
     val relocationDependencies: Artifacts = objects.newInstance(Artifacts::class)
 
+    /**
+     * Selectors for dependencies to embed in the output, so that they can be resolved without
+     * downloading them. A selector is either `*` (every dependency), `group`, `group:name`, or
+     * `group:name:version`.
+     */
+    @get:Input
+    abstract val embeddedDependencies: SetProperty<String>
+
+    /**
+     * Path in the output directory that embedded dependencies are written to, in the Maven repository layout.
+     * Must match the path given to the runtime's `ArtifactSource.classpath`.
+     */
+    @get:Input
+    abstract val embeddedResourcePath: Property<String>
+
     init {
         init()
     }
 
     private fun init() {
         outputDir.convention(layout.buildDirectory.dir("generated/gremlin/$name"))
+        embeddedDependencies.convention(emptySet())
+        embeddedResourcePath.convention("gremlin-embedded")
+    }
+
+    fun embed(vararg selectors: String) {
+        embeddedDependencies.addAll(*selectors)
     }
 
     @JvmOverloads
@@ -101,6 +122,8 @@ abstract class WriteDependencySet : DefaultTask() {
     fun run() {
         val out = StringBuilder()
         val outputFile = outputDir.get().file(outputFileName.get()).asFile
+        val embeddedDir = outputDir.get().dir(embeddedResourcePath.get()).asFile
+        embeddedDir.deleteRecursively()
 
         out.sectionHeader("repos")
         for (repo in repos.get()) {
@@ -115,6 +138,7 @@ abstract class WriteDependencySet : DefaultTask() {
         out.sectionHeader("deps")
         for (dependency in dependencies.artifacts()) {
             dependencyLine(dependency)?.let { out.append(it) }
+            embed(dependency, embeddedDir)
         }
         out.sectionEnd()
 
@@ -123,6 +147,7 @@ abstract class WriteDependencySet : DefaultTask() {
 
             for (dependency in relocationDependencies.artifacts()) {
                 dependencyLine(dependency)?.let { out.append("dep ").append(it) }
+                embed(dependency, embeddedDir)
             }
 
             for (r in relocations) {
@@ -184,7 +209,35 @@ abstract class WriteDependencySet : DefaultTask() {
 
         val hashString = artifact.file.toPath().hashFile(HashingAlgorithm.SHA256).asHexString()
 
-        return "$notation $hashString" + if (appendNewline) "\n" else ""
+        val size = artifact.file.length()
+
+        return "$notation $hashString $size" + if (appendNewline) "\n" else ""
+    }
+
+    protected fun embed(artifact: Artifacts.Artifact, embeddedDir: File) {
+        val componentId = artifact.id.componentIdentifier as? ModuleComponentIdentifier ?: return
+        val selectors = embeddedDependencies.get()
+        val selected = "*" in selectors ||
+            componentId.group in selectors ||
+            "${componentId.group}:${componentId.module}" in selectors ||
+            "${componentId.group}:${componentId.module}:${componentId.version}" in selectors
+        if (!selected) {
+            return
+        }
+
+        val ivyName = (artifact.id as? DefaultModuleComponentArtifactIdentifier)?.name
+        val version = if (componentId is MavenUniqueSnapshotComponentIdentifier) {
+            componentId.timestampedVersion
+        } else {
+            componentId.version
+        }
+        val classifier = ivyName?.classifier?.takeIf { it.isNotBlank() }?.let { "-$it" } ?: ""
+        val ext = ivyName?.extension ?: artifact.file.extension
+
+        // Same layout as the runtime resolves, snapshots are stored under their base version
+        val path = "${componentId.group.replace('.', '/')}/${componentId.module}/${componentId.version}/" +
+            "${componentId.module}-$version$classifier.$ext"
+        artifact.file.copyTo(embeddedDir.resolve(path), overwrite = true)
     }
 
     protected fun StringBuilder.sectionHeader(name: String) {
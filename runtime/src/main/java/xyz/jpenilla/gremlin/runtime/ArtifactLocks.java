@@ -0,0 +1,264 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.HashingAlgorithm;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Per-artifact locks coordinating resolvers and cleanup, both within this JVM and across
+ * processes sharing a {@link DependencyCache}.
+ *
+ * <p>Locks are {@link FileLock FileLocks} on files in the cache's metadata directory, named
+ * after a hash of the artifact's path. Exclusive locks are held while an artifact is being
+ * written and while cleanup deletes it; shared locks are held while an existing artifact is
+ * checked and marked as used.</p>
+ *
+ * <p>File locks are held on behalf of the whole JVM, so threads in this JVM are additionally
+ * serialized per lock file, by locks that are only kept while held or waited for.</p>
+ *
+ * <p>Lock files that aren't held are deleted by {@link #cleanup()}. A lock file is only deleted while
+ * holding its exclusive lock, after which a byte is written to it before releasing the lock. Live lock
+ * files are always empty, so anyone that was waiting for a deleted lock file notices and opens the
+ * current one instead.</p>
+ */
+@NullMarked
+final class ArtifactLocks {
+    private static final String DIRECTORY = "locks";
+    private static final String EXTENSION = ".lock";
+    private static final long RETRY_MILLIS = 10;
+    private static final Map<Path, LocalLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path cacheDirectory;
+    private final Path directory;
+
+    ArtifactLocks(final Path cacheDirectory, final Path metadataDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.directory = metadataDirectory.resolve(DIRECTORY);
+    }
+
+    /**
+     * Acquire the lock for {@code artifact}, waiting as long as necessary. Locks are not reentrant.
+     *
+     * @param artifact artifact path
+     * @param shared   whether to acquire a shared lock, as opposed to an exclusive one
+     * @return lock
+     * @throws IOException on I/O error
+     */
+    Lock acquire(final Path artifact, final boolean shared) throws IOException {
+        final Path lockFile = this.lockFile(artifact);
+        final LocalLock local = LocalLock.retain(lockFile);
+        if (local.lock.isHeldByCurrentThread()) {
+            local.release(lockFile);
+            throw new IllegalStateException("Lock for " + artifact + " is already held by this thread");
+        }
+        local.lock.lock();
+        @Nullable Lock lock = null;
+        try {
+            while (lock == null) {
+                final FileChannel channel;
+                try {
+                    channel = open(lockFile);
+                } catch (final AccessDeniedException ex) {
+                    // Deleted, but still open elsewhere (Windows)
+                    Thread.sleep(RETRY_MILLIS);
+                    continue;
+                }
+                try {
+                    @Nullable FileLock fileLock = null;
+                    while (fileLock == null) {
+                        try {
+                            fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+                        } catch (final OverlappingFileLockException ex) {
+                            // Held by another copy of gremlin in this JVM (i.e. a different class loader)
+                            Thread.sleep(RETRY_MILLIS);
+                        }
+                    }
+                    if (channel.size() == 0) {
+                        lock = new Lock(fileLock, lockFile, local);
+                    }
+                } finally {
+                    if (lock == null) {
+                        channel.close();
+                    }
+                }
+            }
+            return lock;
+        } catch (final InterruptedException ex) {
+            throw Util.rethrow(ex);
+        } finally {
+            if (lock == null) {
+                local.lock.unlock();
+                local.release(lockFile);
+            }
+        }
+    }
+
+    /**
+     * Acquire the exclusive lock for {@code artifact} if it's not currently held by anyone else.
+     *
+     * @param artifact artifact path
+     * @return lock, or {@code null} if the lock is held elsewhere
+     * @throws IOException on I/O error
+     */
+    @Nullable Lock tryAcquire(final Path artifact) throws IOException {
+        return tryAcquireFile(this.lockFile(artifact));
+    }
+
+    /**
+     * Delete the lock files that aren't currently held.
+     *
+     * @throws IOException on I/O error
+     */
+    void cleanup() throws IOException {
+        final List<Path> files;
+        try (final Stream<Path> s = Files.list(this.directory)) {
+            files = s.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).toList();
+        } catch (final NoSuchFileException ex) {
+            return;
+        }
+        for (final Path f : files) {
+            final @Nullable Lock lock = tryAcquireFile(f);
+            if (lock != null) {
+                lock.delete();
+            }
+        }
+    }
+
+    private static @Nullable Lock tryAcquireFile(final Path lockFile) throws IOException {
+        final LocalLock local = LocalLock.retain(lockFile);
+        if (!local.lock.tryLock()) {
+            local.release(lockFile);
+            return null;
+        }
+        @Nullable Lock lock = null;
+        try {
+            while (true) {
+                final FileChannel channel;
+                try {
+                    channel = open(lockFile);
+                } catch (final AccessDeniedException ex) {
+                    return null;
+                }
+                try {
+                    final @Nullable FileLock fileLock = channel.tryLock();
+                    if (fileLock == null) {
+                        return null;
+                    }
+                    if (channel.size() == 0) {
+                        lock = new Lock(fileLock, lockFile, local);
+                        return lock;
+                    }
+                    // Deleted since it was opened, try the current one
+                } catch (final OverlappingFileLockException ex) {
+                    return null;
+                } finally {
+                    if (lock == null) {
+                        channel.close();
+                    }
+                }
+            }
+        } finally {
+            if (lock == null) {
+                local.lock.unlock();
+                local.release(lockFile);
+            }
+        }
+    }
+
+    private Path lockFile(final Path artifact) {
+        final String key = this.cacheDirectory.toAbsolutePath().relativize(artifact.toAbsolutePath()).toString().replace('\\', '/');
+        return this.directory.resolve(HashingAlgorithm.SHA1.hashString(key).asHexString() + EXTENSION);
+    }
+
+    private static FileChannel open(final Path lockFile) throws IOException {
+        return FileChannel.open(Util.mkParentDirs(lockFile), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Lock serializing this JVM's threads for one lock file, counting the threads holding or waiting for it.
+     */
+    private static final class LocalLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by LOCAL_LOCKS
+        private int users;
+
+        static LocalLock retain(final Path lockFile) {
+            return LOCAL_LOCKS.compute(lockFile, ($, existing) -> {
+                final LocalLock local = existing == null ? new LocalLock() : existing;
+                local.users++;
+                return local;
+            });
+        }
+
+        void release(final Path lockFile) {
+            LOCAL_LOCKS.computeIfPresent(lockFile, ($, local) -> --local.users == 0 ? null : local);
+        }
+    }
+
+    static final class Lock implements AutoCloseable {
+        private final FileLock lock;
+        private final Path file;
+        private final LocalLock local;
+
+        private Lock(final FileLock lock, final Path file, final LocalLock local) {
+            this.lock = lock;
+            this.file = file;
+            this.local = local;
+        }
+
+        /**
+         * Delete the lock file and release the lock, marking the file as deleted for anyone waiting for it.
+         */
+        private void delete() throws IOException {
+            try {
+                Files.deleteIfExists(this.file);
+                this.lock.channel().write(ByteBuffer.wrap(new byte[]{1}), 0);
+            } finally {
+                this.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.lock.channel().close();
+            } finally {
+                this.local.lock.unlock();
+                this.local.release(this.file);
+            }
+        }
+    }
+}
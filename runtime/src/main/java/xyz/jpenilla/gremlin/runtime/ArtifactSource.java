@@ -0,0 +1,120 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * A source of artifacts checked before any remote repository, for example a local Maven repository.
+ *
+ * <p>Artifacts provided by a source are verified against the SHA-256 hash in the {@link DependencySet}
+ * before being added to the {@link DependencyCache}, so a source can't introduce unexpected files.
+ * A hash mismatch is treated the same as the source not having the artifact.</p>
+ *
+ * <p>{@code file:} repositories are always resolved as sources, using {@link #directory(Path)}.</p>
+ *
+ * @see DependencyResolver.Builder#addArtifactSource(ArtifactSource)
+ */
+@FunctionalInterface
+@NullMarked
+public interface ArtifactSource {
+    /**
+     * Write {@code dependency} to {@code destination}, if this source has it.
+     *
+     * <p>{@code destination} doesn't exist when this method is called, and is in the same directory as the
+     * final location of the artifact in the cache, so hard links may be used where supported.</p>
+     *
+     * @param dependency   dependency
+     * @param artifactPath path of the artifact in the standard Maven repository layout, for example
+     *                     {@code org/example/lib/1.0/lib-1.0.jar}
+     * @param destination  file to write the artifact to
+     * @return whether the artifact was written
+     * @throws IOException on I/O error
+     */
+    boolean provide(Dependency dependency, String artifactPath, Path destination) throws IOException;
+
+    /**
+     * Default path (relative to the class path root) that the Gradle plugin embeds artifacts at.
+     */
+    String EMBEDDED_RESOURCE_PATH = "gremlin-embedded/";
+
+    /**
+     * Source for artifacts embedded at {@link #EMBEDDED_RESOURCE_PATH} by the Gradle plugin.
+     *
+     * @param loader class loader of the jar containing the embedded artifacts
+     * @return artifact source
+     */
+    static ArtifactSource embedded(final ClassLoader loader) {
+        return classpath(loader, EMBEDDED_RESOURCE_PATH);
+    }
+
+    /**
+     * Source for artifacts stored as class path resources in the standard Maven repository layout. Artifacts
+     * are extracted into the cache with a single streaming copy.
+     *
+     * @param loader class loader
+     * @param path   path of the repository root relative to the class path root, for example {@code libs/}
+     * @return artifact source
+     */
+    static ArtifactSource classpath(final ClassLoader loader, final String path) {
+        return new LocalArtifactSources.ClasspathResources(loader, path.isEmpty() || path.endsWith("/") ? path : path + '/');
+    }
+
+    /**
+     * Source for a directory in the standard Maven repository layout.
+     *
+     * @param repository repository root
+     * @return artifact source
+     */
+    static ArtifactSource directory(final Path repository) {
+        return new LocalArtifactSources.MavenLayout(repository);
+    }
+
+    /**
+     * Source for the local Maven repository, {@code ~/.m2/repository} unless overridden with the
+     * {@code maven.repo.local} system property.
+     *
+     * @return artifact source
+     */
+    static ArtifactSource mavenLocal() {
+        return directory(LocalArtifactSources.mavenLocalRepository());
+    }
+
+    /**
+     * Source for Gradle's module cache ({@code caches/modules-2}) in the default Gradle user home,
+     * {@code ~/.gradle} unless overridden with the {@code GRADLE_USER_HOME} environment variable or the
+     * {@code gradle.user.home} system property.
+     *
+     * @return artifact source
+     */
+    static ArtifactSource gradleCache() {
+        return gradleCache(LocalArtifactSources.gradleUserHome());
+    }
+
+    /**
+     * Source for Gradle's module cache ({@code caches/modules-2}) in the provided Gradle user home.
+     *
+     * @param gradleUserHome Gradle user home
+     * @return artifact source
+     */
+    static ArtifactSource gradleCache(final Path gradleUserHome) {
+        return new LocalArtifactSources.GradleModuleCache(gradleUserHome.resolve("caches/modules-2/files-2.1"));
+    }
+}
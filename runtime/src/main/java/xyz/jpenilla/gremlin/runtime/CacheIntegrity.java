@@ -0,0 +1,112 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.time.Duration;
+import java.util.Objects;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Determines how a {@link DependencyCache} checks that cached artifacts are still intact before reusing them.
+ *
+ * <p>Artifacts are always verified against their expected SHA-256 hash when they enter the cache. The
+ * modes differ in how much of that verification is repeated on later cache hits.</p>
+ *
+ * @see DependencyCache#DependencyCache(java.nio.file.Path, CacheIntegrity)
+ */
+@NullMarked
+public final class CacheIntegrity {
+    private static final CacheIntegrity METADATA = new CacheIntegrity("metadata", Mode.METADATA, Duration.ZERO);
+    private static final CacheIntegrity FULL = new CacheIntegrity("full", Mode.FULL, Duration.ZERO);
+
+    private final String name;
+    private final Mode mode;
+    private final Duration fullVerificationInterval;
+
+    private CacheIntegrity(final String name, final Mode mode, final Duration fullVerificationInterval) {
+        this.name = name;
+        this.mode = mode;
+        this.fullVerificationInterval = fullVerificationInterval;
+    }
+
+    /**
+     * Trusts verified artifacts as long as their size, modification time, and file key are unchanged,
+     * without reading them.
+     *
+     * <p>This is the default.</p>
+     *
+     * @return metadata integrity mode
+     */
+    public static CacheIntegrity metadata() {
+        return METADATA;
+    }
+
+    /**
+     * Checks verified artifacts against a CRC32C checksum recorded when they were verified, which is much
+     * cheaper to compute than the cryptographic hashes. Artifacts are fully verified again against their
+     * SHA-256 hash when the checksum doesn't match, and once {@code fullVerificationInterval} has passed
+     * since they were last fully verified.
+     *
+     * @param fullVerificationInterval how often to fully verify artifacts again
+     * @return fast checksum integrity mode
+     */
+    public static CacheIntegrity fastChecksum(final Duration fullVerificationInterval) {
+        Objects.requireNonNull(fullVerificationInterval, "fullVerificationInterval");
+        if (fullVerificationInterval.isNegative() || fullVerificationInterval.isZero()) {
+            throw new IllegalArgumentException("fullVerificationInterval must be positive");
+        }
+        return new CacheIntegrity("fastChecksum[" + fullVerificationInterval + ']', Mode.FAST_CHECKSUM, fullVerificationInterval);
+    }
+
+    /**
+     * Fully verifies artifacts against their SHA-256 hash on every cache hit.
+     *
+     * @return full integrity mode
+     */
+    public static CacheIntegrity full() {
+        return FULL;
+    }
+
+    Mode mode() {
+        return this.mode;
+    }
+
+    Duration fullVerificationInterval() {
+        return this.fullVerificationInterval;
+    }
+
+    /**
+     * Whether cache hits read the artifact, rather than only checking its metadata.
+     *
+     * @return whether contents are checked
+     */
+    boolean checksContents() {
+        return this.mode != Mode.METADATA;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheIntegrity[" + this.name + ']';
+    }
+
+    enum Mode {
+        METADATA,
+        FAST_CHECKSUM,
+        FULL
+    }
+}
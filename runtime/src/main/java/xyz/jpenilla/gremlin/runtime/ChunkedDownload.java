@@ -0,0 +1,593 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.function.UnaryOperator;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.HashingAlgorithm;
+import xyz.jpenilla.gremlin.runtime.util.MultiAlgorithmHasher;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Downloads a large artifact as multiple byte ranges over parallel connections.
+ *
+ * <p>The first range is requested up front, and the total size is taken from its
+ * {@code Content-Range}. As soon as it is known, the file is preallocated and the
+ * remaining ranges, starting wherever the first response ended, are requested over at
+ * most {@code maxConnections} connections. Every range is written to its position in the
+ * file, and the file is hashed in a single pass once it has been assembled.</p>
+ *
+ * <p>The connection of the first range is covered by the caller's {@link HostConcurrencyLimiter}
+ * permit and {@link DownloadBudget} slot, and continues with the next range whenever it finishes one.
+ * Each additional connection needs a permit and a slot of its own, which are only taken if they are
+ * available right away, so a congested host or a saturated budget gets fewer connections, and the
+ * host sees every one of them in its feedback.</p>
+ *
+ * <p>The length of the longest completed prefix is reported as it grows, so that it can be
+ * recorded for resuming the download even if the process doesn't get to clean up. If a range
+ * fails or the download is {@linkplain Subscriber#cancel() cancelled}, every range exchange is
+ * cancelled and the file is truncated to that prefix once no range is being written anymore,
+ * so that the download can be resumed by a {@link PartialDownload}.</p>
+ */
+@NullMarked
+final class ChunkedDownload {
+    private final HttpClient client;
+    private final HostConcurrencyLimiter hostLimiter;
+    private final Object budgetOwner;
+    private final int maxConnections;
+    private final long chunkSize;
+    private final Duration readTimeout;
+    private final UnaryOperator<HttpRequest.Builder> requestCustomizer;
+
+    ChunkedDownload(
+        final HttpClient client,
+        final HostConcurrencyLimiter hostLimiter,
+        final Object budgetOwner,
+        final int maxConnections,
+        final long chunkSize,
+        final Duration readTimeout,
+        final UnaryOperator<HttpRequest.Builder> requestCustomizer
+    ) {
+        this.client = client;
+        this.hostLimiter = hostLimiter;
+        this.budgetOwner = budgetOwner;
+        this.maxConnections = maxConnections;
+        this.chunkSize = chunkSize;
+        this.readTimeout = readTimeout;
+        this.requestCustomizer = requestCustomizer;
+    }
+
+    /**
+     * Get the size of the first range to request.
+     *
+     * @return first range size
+     */
+    long chunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Creates the subscriber for the response to the first range. Requests for the remaining
+     * ranges are started immediately.
+     *
+     * @param uri         uri
+     * @param file        output file
+     * @param firstLength length of the first range
+     * @param total       total file size
+     * @param ifRange     validator to send with the remaining range requests, if any
+     * @param prefixListener called with the length of the completed prefix whenever it grows
+     * @return subscriber completing once every range has been written and the file hashed
+     */
+    Subscriber subscriber(
+        final URI uri,
+        final Path file,
+        final long firstLength,
+        final long total,
+        final @Nullable String ifRange,
+        final LongConsumer prefixListener
+    ) {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(Util.mkParentDirs(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            channel.truncate(0);
+            // Preallocate; sparse where the file system supports it
+            channel.write(ByteBuffer.allocate(1), total - 1);
+        } catch (final IOException ex) {
+            final HttpResponse.BodySubscriber<FileWithHashes> failed = HashingFileSubscriber.failed(ex);
+            return new Subscriber(null, failed, failed.getBody().toCompletableFuture());
+        }
+        final Assembly assembly = new Assembly(uri, file, channel, firstLength, total, ifRange, prefixListener);
+        final RangeSubscriber first = new RangeSubscriber(channel, 0, firstLength);
+        assembly.register(first);
+        assembly.add(0, new Connection(null), first.getBody().toCompletableFuture());
+        assembly.addConnections();
+        return new Subscriber(assembly, first, assembly.result);
+    }
+
+    /**
+     * The subscriber for the response to the first range, completing once the whole file has been assembled.
+     */
+    static final class Subscriber implements HttpResponse.BodySubscriber<FileWithHashes> {
+        private final @Nullable Assembly assembly;
+        private final HttpResponse.BodySubscriber<?> first;
+        private final CompletableFuture<FileWithHashes> result;
+
+        private Subscriber(final @Nullable Assembly assembly, final HttpResponse.BodySubscriber<?> first, final CompletableFuture<FileWithHashes> result) {
+            this.assembly = assembly;
+            this.first = first;
+            this.result = result;
+        }
+
+        /**
+         * Cancel every range that is still in flight. Once this returns, no more bytes are written to the file,
+         * and it has been truncated to the completed prefix.
+         */
+        void cancel() {
+            final @Nullable Assembly assembly = this.assembly;
+            if (assembly == null) {
+                return;
+            }
+            assembly.fail(new CancellationException("Download was cancelled"));
+            // Another thread may have been stopping it already
+            try {
+                assembly.result.join();
+            } catch (final CompletionException | CancellationException ignore) {
+                // Expected
+            }
+        }
+
+        @Override
+        public CompletionStage<FileWithHashes> getBody() {
+            return this.result;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.first.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> item) {
+            this.first.onNext(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            this.first.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.first.onComplete();
+        }
+    }
+
+    private final class Assembly {
+        private final URI uri;
+        private final Path file;
+        private final FileChannel channel;
+        private final long total;
+        private final @Nullable String ifRange;
+        private final LongConsumer prefixListener;
+        private final List<Range> ranges = new ArrayList<>();
+        // Guarded by this, so that nothing is started once stopped is set
+        private final List<RangeSubscriber> subscribers = new ArrayList<>();
+        private final List<CompletableFuture<?>> exchanges = new ArrayList<>();
+        private boolean stopped;
+        private final boolean[] done;
+        private final AtomicInteger next = new AtomicInteger(1);
+        private final AtomicInteger remaining;
+        private int connections = 1;
+        private long prefix;
+        private final CompletableFuture<FileWithHashes> result = new CompletableFuture<>();
+
+        Assembly(
+            final URI uri,
+            final Path file,
+            final FileChannel channel,
+            final long firstLength,
+            final long total,
+            final @Nullable String ifRange,
+            final LongConsumer prefixListener
+        ) {
+            this.uri = uri;
+            this.file = file;
+            this.channel = channel;
+            this.total = total;
+            this.ifRange = ifRange;
+            this.prefixListener = prefixListener;
+            // The server may have answered with less than the requested first range, the rest is requested along with the others
+            this.ranges.add(new Range(0, firstLength - 1));
+            for (long start = firstLength; start < total; start += ChunkedDownload.this.chunkSize) {
+                this.ranges.add(new Range(start, Math.min(start + ChunkedDownload.this.chunkSize, total) - 1));
+            }
+            this.done = new boolean[this.ranges.size()];
+            this.remaining = new AtomicInteger(this.ranges.size());
+        }
+
+        /**
+         * Track {@code subscriber} so that it can be cancelled, or cancel it right away if the download already failed.
+         */
+        void register(final RangeSubscriber subscriber) {
+            synchronized (this) {
+                if (!this.stopped) {
+                    this.subscribers.add(subscriber);
+                    return;
+                }
+            }
+            subscriber.cancel();
+        }
+
+        synchronized void add(final int idx, final Connection connection, final CompletableFuture<Void> future) {
+            future.whenComplete(($, throwable) -> this.completed(idx, connection, throwable));
+        }
+
+        /**
+         * Open additional connections for the remaining ranges, as long as the host has permits available.
+         */
+        synchronized void addConnections() {
+            while (this.connections < ChunkedDownload.this.maxConnections && this.next.get() < this.ranges.size() && !this.stopped) {
+                final HostConcurrencyLimiter.@Nullable Permit permit = ChunkedDownload.this.hostLimiter.tryAcquire(this.uri);
+                if (permit == null) {
+                    return;
+                }
+                if (!DownloadBudget.tryAcquire(ChunkedDownload.this.budgetOwner)) {
+                    permit.release();
+                    return;
+                }
+                final Connection connection = new Connection(permit);
+                this.connections++;
+                if (!this.launchNext(connection)) {
+                    this.closed(connection, null);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Request the next range over {@code connection}.
+         *
+         * @return whether a range was left to request
+         */
+        boolean launchNext(final Connection connection) {
+            final int idx = this.next.getAndIncrement();
+            if (idx >= this.ranges.size() || this.result.isDone()) {
+                return false;
+            }
+            final Range range = this.ranges.get(idx);
+            final HttpRequest.Builder builder = ChunkedDownload.this.requestCustomizer.apply(HttpRequest.newBuilder(this.uri))
+                .header("Range", "bytes=" + range.start() + '-' + range.end())
+                .timeout(ChunkedDownload.this.readTimeout)
+                .GET();
+            if (this.ifRange != null) {
+                builder.header("If-Range", this.ifRange);
+            }
+            final long length = range.end() - range.start() + 1;
+            final CompletableFuture<HttpResponse<Void>> exchange = ChunkedDownload.this.client.sendAsync(builder.build(), responseInfo -> {
+                connection.responded(responseInfo);
+                if (responseInfo.statusCode() != 206
+                    || !responseInfo.headers().firstValue("Content-Range").orElse("").startsWith("bytes " + range.start() + '-' + range.end() + '/')) {
+                    return HashingFileSubscriber.failed(new IOException(
+                        "Unexpected response to range request for " + this.uri + ": response code " + responseInfo.statusCode()
+                    ));
+                }
+                final RangeSubscriber subscriber = new RangeSubscriber(this.channel, range.start(), length);
+                this.register(subscriber);
+                return subscriber;
+            });
+            synchronized (this) {
+                if (this.stopped) {
+                    exchange.cancel(true);
+                } else {
+                    this.exchanges.add(exchange);
+                }
+            }
+            this.add(idx, connection, exchange.thenApply(HttpResponse::body));
+            return true;
+        }
+
+        private void completed(final int idx, final Connection connection, final @Nullable Throwable throwable) {
+            if (throwable != null) {
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                this.closed(connection, cause);
+                this.fail(cause);
+                return;
+            }
+            final Range range = this.ranges.get(idx);
+            connection.bytes += range.end() - range.start() + 1;
+            synchronized (this) {
+                this.done[idx] = true;
+                final long prefix = this.completedPrefix();
+                if (prefix > this.prefix && prefix < this.total) {
+                    this.prefix = prefix;
+                    this.prefixListener.accept(prefix);
+                }
+            }
+            if (this.remaining.decrementAndGet() == 0) {
+                this.closed(connection, null);
+                this.finish();
+                return;
+            }
+            if (!this.launchNext(connection)) {
+                this.closed(connection, null);
+            }
+            this.addConnections();
+        }
+
+        private synchronized void closed(final Connection connection, final @Nullable Throwable failure) {
+            this.connections--;
+            if (connection.release(failure)) {
+                DownloadBudget.release(ChunkedDownload.this.budgetOwner);
+            }
+        }
+
+        private void finish() {
+            synchronized (this) {
+                if (this.stopped) {
+                    return;
+                }
+                this.stopped = true;
+            }
+            try {
+                final MultiAlgorithmHasher.Session hashes = HashingFileSubscriber.newHashes();
+                final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                long position = 0;
+                while (position < this.total) {
+                    final int read = this.channel.read(buffer, position);
+                    if (read == -1) {
+                        break;
+                    }
+                    position += read;
+                    buffer.flip();
+                    hashes.update(buffer);
+                    buffer.clear();
+                }
+                this.channel.close();
+                final MultiAlgorithmHasher.HashesMap result = hashes.finish();
+                this.result.complete(new FileWithHashes(this.file, result.hash(HashingAlgorithm.SHA256), result.hash(HashingAlgorithm.SHA1)));
+            } catch (final IOException ex) {
+                this.abandon(ex);
+            }
+        }
+
+        private long completedPrefix() {
+            long prefix = 0;
+            for (int i = 0; i < this.done.length && this.done[i]; i++) {
+                prefix = this.ranges.get(i).end() + 1;
+            }
+            return prefix;
+        }
+
+        void fail(final Throwable throwable) {
+            final List<RangeSubscriber> subscribers;
+            final List<CompletableFuture<?>> exchanges;
+            synchronized (this) {
+                if (this.stopped) {
+                    return;
+                }
+                this.stopped = true;
+                subscribers = new ArrayList<>(this.subscribers);
+                exchanges = new ArrayList<>(this.exchanges);
+            }
+            // Stop every range before touching the file; once cancelled, a subscriber doesn't write anymore
+            for (final RangeSubscriber subscriber : subscribers) {
+                subscriber.cancel();
+            }
+            for (final CompletableFuture<?> exchange : exchanges) {
+                exchange.cancel(true);
+            }
+            this.abandon(throwable);
+        }
+
+        /**
+         * Truncate the file to the completed prefix and fail the download, once no range is being written anymore.
+         */
+        private void abandon(final Throwable throwable) {
+            // Keep the completed prefix so the download can be resumed
+            final long prefix;
+            synchronized (this) {
+                prefix = this.completedPrefix();
+            }
+            try {
+                this.channel.truncate(prefix);
+                this.channel.close();
+            } catch (final IOException ex) {
+                throwable.addSuppressed(ex);
+            }
+            this.result.completeExceptionally(throwable);
+        }
+    }
+
+    private record Range(long start, long end) {}
+
+    /**
+     * A connection requesting ranges one after another, and the host permit covering it. Connections with
+     * a permit of their own also hold a {@link DownloadBudget} slot.
+     */
+    private static final class Connection {
+        // null for the connection of the first range, whose permit is held by the caller
+        private final HostConcurrencyLimiter.@Nullable Permit permit;
+        private final long start = System.nanoTime();
+        private volatile long bytes;
+        private volatile int lastStatus;
+        private volatile @Nullable Duration retryAfter;
+
+        Connection(final HostConcurrencyLimiter.@Nullable Permit permit) {
+            this.permit = permit;
+        }
+
+        void responded(final HttpResponse.ResponseInfo responseInfo) {
+            this.lastStatus = responseInfo.statusCode();
+            if (this.lastStatus == 429 || this.lastStatus == 503) {
+                this.retryAfter = HostConcurrencyLimiter.retryAfter(responseInfo.headers());
+            }
+        }
+
+        /**
+         * Release the permit, if this connection has its own.
+         *
+         * @param failure failure that closed the connection, if any
+         * @return whether this connection had its own permit and budget slot
+         */
+        boolean release(final @Nullable Throwable failure) {
+            final HostConcurrencyLimiter.@Nullable Permit permit = this.permit;
+            if (permit == null) {
+                return false;
+            }
+            if (failure == null) {
+                permit.completed(this.bytes, System.nanoTime() - this.start);
+            } else if (this.lastStatus == 429 || this.retryAfter != null) {
+                permit.throttled(this.retryAfter);
+            } else if (failure instanceof CancellationException) {
+                permit.release();
+            } else {
+                permit.failed();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes a response body to a position in a shared channel.
+     *
+     * <p>Writes happen while holding the subscriber's lock, and stop once it is closed, so that
+     * after {@link #cancel()} returns the subscriber no longer touches the channel. The result is
+     * completed outside the lock, as completing it may run other ranges' callbacks.</p>
+     */
+    private static final class RangeSubscriber implements HttpResponse.BodySubscriber<Void> {
+        private final FileChannel channel;
+        private final long end;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private volatile Flow.@Nullable Subscription subscription;
+        private long position;
+        private boolean closed;
+
+        RangeSubscriber(final FileChannel channel, final long start, final long length) {
+            this.channel = channel;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            final boolean closed;
+            synchronized (this) {
+                closed = this.closed;
+            }
+            if (closed) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> buffers) {
+            final long written;
+            try {
+                synchronized (this) {
+                    if (this.closed) {
+                        return;
+                    }
+                    final long before = this.position;
+                    for (final ByteBuffer buffer : buffers) {
+                        if (this.position + buffer.remaining() > this.end) {
+                            throw new IOException("Received more bytes than requested");
+                        }
+                        while (buffer.hasRemaining()) {
+                            this.position += this.channel.write(buffer, this.position);
+                        }
+                    }
+                    written = this.position - before;
+                }
+            } catch (final IOException ex) {
+                this.onError(ex);
+                return;
+            }
+            final Flow.@Nullable Subscription sub = this.subscription;
+            if (sub != null) {
+                HashingFileSubscriber.requestNext(sub, written);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            this.close(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            final long missing;
+            synchronized (this) {
+                missing = this.end - this.position;
+            }
+            this.close(missing != 0 ? new IOException("Range ended %d bytes early".formatted(missing)) : null);
+        }
+
+        /**
+         * Stop writing and cancel the exchange. Once this returns, the channel is no longer written to.
+         */
+        void cancel() {
+            this.close(new CancellationException("Range was cancelled"));
+        }
+
+        private void close(final @Nullable Throwable failure) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+            }
+            final Flow.@Nullable Subscription sub = this.subscription;
+            if (failure == null) {
+                this.result.complete(null);
+                return;
+            }
+            if (sub != null) {
+                sub.cancel();
+            }
+            this.result.completeExceptionally(failure);
+        }
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return this.result;
+        }
+    }
+}
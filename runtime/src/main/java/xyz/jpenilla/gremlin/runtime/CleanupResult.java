@@ -0,0 +1,39 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * What a {@link DependencyCache} cleanup deleted.
+ *
+ * @param deletedFiles   number of deleted files
+ * @param reclaimedBytes total size of the deleted files
+ */
+@NullMarked
+public record CleanupResult(int deletedFiles, long reclaimedBytes) {
+    static final CleanupResult NONE = new CleanupResult(0, 0);
+
+    CleanupResult plus(final CleanupResult other) {
+        return new CleanupResult(this.deletedFiles + other.deletedFiles, this.reclaimedBytes + other.reclaimedBytes);
+    }
+
+    CleanupResult plus(final long bytes) {
+        return new CleanupResult(this.deletedFiles + 1, this.reclaimedBytes + bytes);
+    }
+}
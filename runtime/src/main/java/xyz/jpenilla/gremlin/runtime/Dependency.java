@@ -21,6 +21,17 @@ import java.util.Comparator;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
+/**
+ * A dependency to resolve.
+ *
+ * @param group      group
+ * @param name       name
+ * @param version    version
+ * @param classifier classifier
+ * @param extension  extension
+ * @param sha256     expected SHA-256 hash
+ * @param size       expected size in bytes, or {@code -1} if unknown
+ */
 @NullMarked
 public record Dependency(
     String group,
@@ -28,7 +39,8 @@ public record Dependency(
     String version,
     @Nullable String classifier,
     String extension,
-    String sha256
+    String sha256,
+    long size
 ) implements Comparable<Dependency> {
     private static final Comparator<Dependency> COMPARATOR =
         Comparator.comparing(Dependency::group)
@@ -36,7 +48,25 @@ public record Dependency(
             .thenComparing(Dependency::version)
             .thenComparing(dependency -> dependency.classifier() == null ? "" : dependency.classifier())
             .thenComparing(Dependency::extension)
-            .thenComparing(Dependency::sha256);
+            .thenComparing(Dependency::sha256)
+            .thenComparingLong(Dependency::size);
+
+    public Dependency {
+        if (size < -1) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+    }
+
+    public Dependency(
+        final String group,
+        final String name,
+        final String version,
+        final @Nullable String classifier,
+        final String extension,
+        final String sha256
+    ) {
+        this(group, name, version, classifier, extension, sha256, -1);
+    }
 
     @Override
     public int compareTo(final Dependency o) {
@@ -44,6 +74,10 @@ public record Dependency(
     }
 
     public static Dependency parse(final String notation, final String sha256) {
+        return parse(notation, sha256, -1);
+    }
+
+    public static Dependency parse(final String notation, final String sha256, final long size) {
         final String[] parts = notation.split(":");
         final String[] extParts = parts[parts.length - 1].split("@");
         if (extParts.length == 2) {
@@ -58,7 +92,8 @@ public record Dependency(
             parts[2],
             parts.length == 4 ? parts[3] : null,
             extParts[1],
-            sha256
+            sha256,
+            size
         );
     }
 }
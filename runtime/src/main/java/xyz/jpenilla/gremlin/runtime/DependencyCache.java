@@ -19,32 +19,153 @@ package xyz.jpenilla.gremlin.runtime;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 
 @NullMarked
 public final class DependencyCache {
+    private static final String METADATA_DIRECTORY = ".gremlin";
+    // Leaves time for a resolution in another process to register the set it resolved
+    private static final long REGISTRATION_GRACE_MILLIS = Duration.ofMinutes(1).toMillis();
+
     private final Path dir;
+    private final CacheIntegrity integrity;
+    private final VerifiedHashIndex hashIndex;
+    private final WarmStartManifests manifests;
+    private final RepositoryRoutes repositoryRoutes;
+    private final RepositoryHealth repositoryHealth;
+    private final ArtifactLocks locks;
+    private final UsageJournal usage;
+    private final DependencySetRegistry registry;
 
     public DependencyCache(final Path cacheDirectory) {
+        this(cacheDirectory, CacheIntegrity.metadata());
+    }
+
+    /**
+     * Creates a cache that checks cached artifacts according to {@code integrity} before reusing them.
+     *
+     * @param cacheDirectory cache directory
+     * @param integrity      integrity mode
+     */
+    public DependencyCache(final Path cacheDirectory, final CacheIntegrity integrity) {
         this.dir = cacheDirectory;
+        this.integrity = integrity;
+        this.hashIndex = new VerifiedHashIndex(cacheDirectory, this.metadataDirectory(), integrity);
+        this.manifests = new WarmStartManifests(cacheDirectory, this.metadataDirectory());
+        this.repositoryRoutes = new RepositoryRoutes(this.metadataDirectory());
+        this.repositoryHealth = new RepositoryHealth(this.metadataDirectory());
+        this.locks = new ArtifactLocks(cacheDirectory, this.metadataDirectory());
+        this.usage = new UsageJournal(cacheDirectory, this.metadataDirectory(), this.locks);
+        this.registry = new DependencySetRegistry(this.metadataDirectory(), this.locks);
     }
 
     public Path cacheDirectory() {
         return this.dir;
     }
 
+    /**
+     * Directory for gremlin's own bookkeeping files, separate from cached artifacts.
+     *
+     * @return metadata directory
+     */
+    Path metadataDirectory() {
+        return this.dir.resolve(METADATA_DIRECTORY);
+    }
+
+    CacheIntegrity integrity() {
+        return this.integrity;
+    }
+
+    VerifiedHashIndex hashIndex() {
+        return this.hashIndex;
+    }
+
+    WarmStartManifests manifests() {
+        return this.manifests;
+    }
+
+    RepositoryRoutes repositoryRoutes() {
+        return this.repositoryRoutes;
+    }
+
+    RepositoryHealth repositoryHealth() {
+        return this.repositoryHealth;
+    }
+
+    ArtifactLocks locks() {
+        return this.locks;
+    }
+
+    UsageJournal usage() {
+        return this.usage;
+    }
+
+    /**
+     * Get the repository routes learned from past resolutions using this cache.
+     *
+     * <p>Maps {@code group} and {@code group:name} prefixes to the repositories that
+     * served artifacts matching them. Resolution tries these repositories first.</p>
+     *
+     * @return known repository routes
+     */
+    public Map<String, List<String>> knownRepositoryRoutes() {
+        return this.repositoryRoutes.knownRoutes();
+    }
+
+    /**
+     * Register the dependency sets {@code owner} currently uses from this cache, replacing those it registered before.
+     *
+     * <p>Once any sets are registered, {@linkplain #cleanup() cleanup} tracks which registered sets reference each
+     * raw and processed artifact, according to the result of their last resolution. Referenced artifacts are kept
+     * regardless of how long they went unused. While every user of the cache registers its sets, the others are
+     * deleted as soon as they haven't been used for a minute, for example the old versions after a plugin update
+     * replaced them. If an unregistered set or an older version of gremlin used the cache within the cleanup's max
+     * age, unreferenced artifacts wait out the max age as usual.</p>
+     *
+     * @param owner owner of the sets, for example a plugin name
+     * @param sets  dependency sets, or none to unregister {@code owner}
+     */
+    public void register(final String owner, final DependencySet... sets) {
+        if (owner.isEmpty() || owner.indexOf('\t') != -1 || owner.indexOf('\n') != -1 || owner.indexOf('\r') != -1) {
+            throw new IllegalArgumentException("Invalid owner '" + owner + "'");
+        }
+        final Set<String> fingerprints = new HashSet<>();
+        for (final DependencySet set : sets) {
+            fingerprints.add(set.fingerprint());
+        }
+        this.registry.register(owner, fingerprints);
+    }
+
+    /**
+     * Persist any modified bookkeeping state.
+     */
+    void saveMetadata() {
+        this.hashIndex.save();
+        this.repositoryRoutes.save();
+        this.repositoryHealth.save();
+        this.usage.save();
+    }
+
     /**
      * Delete cached entries that haven't been used/resolved for over an hour.
      */
     public void cleanup() {
-        this.cleanup(1, ChronoUnit.HOURS);
+        this.cleanupUnused();
     }
 
     /**
@@ -53,29 +174,267 @@ public final class DependencyCache {
      *
      * @param deleteUnusedFor unused time
      * @param unit            unused time unit
+     * @see #cleanupUnused(long, TemporalUnit)
      */
     public void cleanup(final long deleteUnusedFor, final TemporalUnit unit) {
+        this.cleanupUnused(deleteUnusedFor, unit);
+    }
+
+    /**
+     * Delete cached entries that haven't been used/resolved for over an hour.
+     *
+     * @return what was deleted
+     */
+    public CleanupResult cleanupUnused() {
+        return this.cleanupUnused(1, ChronoUnit.HOURS);
+    }
+
+    /**
+     * Delete cached entries that haven't been used/resolved for the provided
+     * time period.
+     *
+     * <p>When dependency sets are {@linkplain #register(String, DependencySet...) registered}, entries they
+     * reference are kept instead. The others are deleted once unused for a minute if every set resolved within
+     * the time period was registered, and no older version of gremlin used the cache in that time.</p>
+     *
+     * @param deleteUnusedFor unused time
+     * @param unit            unused time unit
+     * @return what was deleted
+     */
+    public CleanupResult cleanupUnused(final long deleteUnusedFor, final TemporalUnit unit) {
         if (!Files.isDirectory(this.dir)) {
-            return;
+            return CleanupResult.NONE;
         }
-        try (final Stream<Path> s = Files.walk(this.dir)) {
-            for (final Path f : s.toList()) {
-                if (Files.isRegularFile(f) && f.getFileName().toString().endsWith(".jar")) {
-                    final long lastUsed = DependencyResolver.lastUsed(f);
-                    if (lastUsed == -1) {
+        final long maxAge = Duration.of(deleteUnusedFor, unit).toMillis();
+        CleanupResult result = CleanupResult.NONE;
+        try {
+            final long lastLegacyUse = this.usage.importLegacy();
+            this.usage.refresh();
+            final @Nullable References references = this.references();
+            // Unreferenced artifacts don't have to wait out maxAge, unless the registered sets' files are only partially
+            // known, or the cache has users that don't register their sets
+            final long unreferencedMaxAge = references != null && references.complete()
+                && this.onlyRegisteringUsers(maxAge, lastLegacyUse)
+                ? Math.min(maxAge, REGISTRATION_GRACE_MILLIS)
+                : maxAge;
+            // Abandoned partial downloads and temporary files are next to the files they were for
+            final Set<Path> directories = new HashSet<>();
+            directories.add(this.metadataDirectory());
+            for (final Map.Entry<Path, Long> entry : this.usage.entries().entrySet()) {
+                final Path f = entry.getKey();
+                directories.add(f.getParent());
+                if (references != null && references.files().contains(f.toAbsolutePath().normalize())) {
+                    continue;
+                }
+                if (System.currentTimeMillis() - entry.getValue() <= unreferencedMaxAge) {
+                    continue;
+                }
+                // Skip artifacts that are being resolved, and re-check under the lock in case another process used it meanwhile
+                try (final ArtifactLocks.@Nullable Lock lock = this.locks.tryAcquire(f)) {
+                    if (lock == null) {
+                        continue;
+                    }
+                    this.usage.refresh();
+                    if (!this.unusedFor(f, unreferencedMaxAge)) {
                         continue;
                     }
-                    final long sinceUsed = System.currentTimeMillis() - lastUsed;
-                    if (sinceUsed > Duration.of(deleteUnusedFor, unit).toMillis()) {
-                        Files.delete(f);
-                        Files.deleteIfExists(DependencyResolver.lastUsedFile(f));
-                        this.deleteEmptyParents(f);
+                    final long size = this.delete(f);
+                    if (size != -1) {
+                        result = result.plus(size);
                     }
                 }
+                this.deleteEmptyParents(f);
+            }
+            for (final Path directory : directories) {
+                result = result.plus(this.deleteTemporaryFiles(directory, maxAge));
             }
+            // Forget files that are gone, unless they may still have a partial download
+            this.usage.compact(f -> Files.exists(f) || !this.unusedFor(f, maxAge));
+            this.saveMetadata();
+            this.locks.cleanup();
+            this.manifests.cleanup(unreferencedMaxAge, references == null ? Set.of() : references.fingerprints());
         } catch (final IOException e) {
             throw new UncheckedIOException("Failed to clean cache", e);
         }
+        return result;
+    }
+
+    /**
+     * Delete the least recently used cached entries until the cached artifacts (raw and processed) take up
+     * at most {@code maxBytes}.
+     *
+     * <p>The files of {@code inUse}, and the raw artifacts they were processed from, are never deleted,
+     * even if they alone exceed {@code maxBytes}. Neither are artifacts being resolved at the time, or
+     * artifacts referenced by {@linkplain #register(String, DependencySet...) registered} sets.</p>
+     *
+     * @param maxBytes maximum total size of cached artifacts
+     * @param inUse    resolved dependency sets to keep
+     * @return what was deleted
+     */
+    public CleanupResult cleanupToSize(final long maxBytes, final ResolvedDependencySet... inUse) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be non-negative, got " + maxBytes);
+        }
+        if (!Files.isDirectory(this.dir)) {
+            return CleanupResult.NONE;
+        }
+        final Set<Path> keep = new HashSet<>();
+        for (final ResolvedDependencySet set : inUse) {
+            set.map().forEach((dependency, file) -> {
+                keep.add(file.toAbsolutePath().normalize());
+                keep.add(this.dir.resolve(DependencyResolver.artifactPath(dependency)).toAbsolutePath().normalize());
+            });
+        }
+        CleanupResult result = CleanupResult.NONE;
+        try {
+            this.usage.importLegacy();
+            this.usage.refresh();
+            final @Nullable References references = this.references();
+            if (references != null) {
+                keep.addAll(references.files());
+            }
+            long total = 0;
+            final List<LeastRecentlyUsed> candidates = new ArrayList<>();
+            for (final Map.Entry<Path, Long> entry : this.usage.entries().entrySet()) {
+                final Path f = entry.getKey();
+                final long size;
+                try {
+                    size = Files.size(f);
+                } catch (final NoSuchFileException ex) {
+                    continue;
+                }
+                total += size;
+                if (!keep.contains(f.toAbsolutePath().normalize())) {
+                    candidates.add(new LeastRecentlyUsed(f, entry.getValue()));
+                }
+            }
+            candidates.sort(Comparator.comparingLong(LeastRecentlyUsed::lastUsed));
+            for (final LeastRecentlyUsed candidate : candidates) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                final Path f = candidate.file();
+                // Skip artifacts that are being resolved, or were used by another process since listing them
+                try (final ArtifactLocks.@Nullable Lock lock = this.locks.tryAcquire(f)) {
+                    if (lock == null) {
+                        continue;
+                    }
+                    this.usage.refresh();
+                    if (this.usage.lastUsed(f) != candidate.lastUsed()) {
+                        continue;
+                    }
+                    final long size = this.delete(f);
+                    if (size == -1) {
+                        continue;
+                    }
+                    total -= size;
+                    result = result.plus(size);
+                }
+                this.deleteEmptyParents(f);
+            }
+            if (result.deletedFiles() > 0) {
+                final long recently = Duration.ofHours(1).toMillis();
+                this.usage.compact(f -> Files.exists(f) || !this.unusedFor(f, recently));
+                this.saveMetadata();
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to clean cache", e);
+        }
+        return result;
+    }
+
+    /**
+     * Collect the files referenced by registered dependency sets.
+     *
+     * @return references, or {@code null} when no sets are registered
+     */
+    private @Nullable References references() {
+        final Set<String> fingerprints = this.registry.fingerprints();
+        if (fingerprints.isEmpty()) {
+            return null;
+        }
+        final Set<Path> files = new HashSet<>();
+        boolean complete = true;
+        for (final String fingerprint : fingerprints) {
+            final @Nullable List<Path> referenced = this.manifests.files(fingerprint);
+            if (referenced == null) {
+                // Registered before it was resolved, or its last resolution failed
+                complete = false;
+                continue;
+            }
+            for (final Path f : referenced) {
+                files.add(f.toAbsolutePath().normalize());
+            }
+        }
+        return new References(fingerprints, files, complete);
+    }
+
+    /**
+     * Check whether every user of the cache within {@code maxAge} registers its sets, meaning no older version
+     * of gremlin used it and every dependency set resolved is registered, or was until its owner replaced it.
+     *
+     * @param maxAge        max age
+     * @param lastLegacyUse last use by an older version, or {@code -1}
+     * @return whether only registering users used the cache
+     */
+    private boolean onlyRegisteringUsers(final long maxAge, final long lastLegacyUse) throws IOException {
+        if (lastLegacyUse != -1 && System.currentTimeMillis() - lastLegacyUse <= maxAge) {
+            return false;
+        }
+        return this.registry.knownFingerprints().containsAll(this.manifests.usedWithin(maxAge));
+    }
+
+    /**
+     * Delete a cached artifact, which must be locked by the caller.
+     *
+     * @return size of the deleted file, or {@code -1} if it didn't exist
+     */
+    private long delete(final Path file) throws IOException {
+        final long size;
+        try {
+            size = Files.size(file);
+        } catch (final NoSuchFileException ex) {
+            return -1;
+        }
+        if (!Files.deleteIfExists(file)) {
+            return -1;
+        }
+        this.hashIndex.remove(file);
+        return size;
+    }
+
+    private boolean unusedFor(final Path file, final long maxAge) {
+        final long lastUsed = this.usage.lastUsed(file);
+        return lastUsed != -1 && System.currentTimeMillis() - lastUsed > maxAge;
+    }
+
+    private CleanupResult deleteTemporaryFiles(final Path directory, final long maxAge) throws IOException {
+        final List<Path> files;
+        try (final Stream<Path> s = Files.list(directory)) {
+            files = s.toList();
+        } catch (final NoSuchFileException ex) {
+            return CleanupResult.NONE;
+        }
+        CleanupResult result = CleanupResult.NONE;
+        for (final Path f : files) {
+            if (Files.isRegularFile(f) && isTemporary(f)
+                && System.currentTimeMillis() - Files.getLastModifiedTime(f).toMillis() > maxAge) {
+                // Abandoned partial download or temporary file
+                final long size = Files.size(f);
+                if (Files.deleteIfExists(f)) {
+                    result = result.plus(size);
+                }
+                this.deleteEmptyParents(f);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isTemporary(final Path file) {
+        final String name = file.getFileName().toString();
+        return name.endsWith(PartialDownload.PART_EXTENSION)
+            || name.endsWith(PartialDownload.META_EXTENSION)
+            || name.endsWith(".tmp");
     }
 
     private void deleteEmptyParents(final Path path) throws IOException {
@@ -86,10 +445,30 @@ public final class DependencyCache {
         final List<Path> siblings;
         try (final Stream<Path> st = Files.list(parent)) {
             siblings = st.toList();
+        } catch (final NoSuchFileException ex) {
+            return;
         }
         if (siblings.isEmpty()) {
-            Files.delete(parent);
+            try {
+                Files.delete(parent);
+            } catch (final DirectoryNotEmptyException | NoSuchFileException ex) {
+                // Concurrently modified by another resolver or cleanup
+                return;
+            }
             this.deleteEmptyParents(parent);
         }
     }
+
+    private record LeastRecentlyUsed(Path file, long lastUsed) {
+    }
+
+    /**
+     * Files referenced by registered dependency sets.
+     *
+     * @param fingerprints registered fingerprints
+     * @param files        normalized absolute paths of referenced files
+     * @param complete     whether the files of every registered set are known
+     */
+    private record References(Set<String> fingerprints, Set<Path> files, boolean complete) {
+    }
 }
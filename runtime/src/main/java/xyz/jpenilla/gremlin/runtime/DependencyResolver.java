@@ -28,26 +28,41 @@ import java.net.URLClassLoader;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jspecify.annotations.NullMarked;
@@ -60,23 +75,106 @@ import xyz.jpenilla.gremlin.runtime.util.Util;
 
 @NullMarked
 public final class DependencyResolver implements AutoCloseable {
-    private static final MultiAlgorithmHasher MULTI_HASHER = new MultiAlgorithmHasher(HashingAlgorithm.SHA1, HashingAlgorithm.SHA256);
     @SuppressWarnings("RegExpUnnecessaryNonCapturingGroup")
     private static final Pattern UNIQUE_SNAPSHOT = Pattern.compile("(?:.+)-(\\d{8}\\.\\d{6}-\\d+)");
     private static final String USER_AGENT_HEADER = "User-Agent";
     private static final String USER_AGENT = "gremlin";
+    private static final MultiAlgorithmHasher LOCAL_HASHER = new MultiAlgorithmHasher(HashingAlgorithm.SHA256, HashingAlgorithm.SHA1);
+    private static final ResolutionListener NO_LISTENER = (dependency, path) -> {
+    };
 
     private final GremlinLogger logger;
-    private final HttpClient client;
+    private final Supplier<Network> networkFactory;
+    private volatile @Nullable Network network;
+    private final @Nullable Duration hedgeDelay;
+    private final Duration readTimeout;
+    private final Duration downloadTimeout;
+    private final Duration resolutionTimeout;
+    private final int maxRetries;
+    private final int retryBudget;
+    private final Duration retryBackoff;
+    private final boolean failFast;
+    private final boolean ownsClient;
+    private final boolean offline;
+    private final List<ArtifactSource> artifactSources;
+    private final boolean preconnect;
+    private final HostConcurrencyLimiter hostLimiter;
+    // Identifies this resolver to the DownloadBudget; a JDK type, as the budget is shared with other class loaders
+    private final Object budgetOwner = new Object();
+    private final int maxConcurrency;
+    private final ExecutorStrategy executorStrategy;
+    private final InFlightArtifacts inFlight;
+    // JarProcessors are CPU bound, don't run more of them at once than there are processors
+    private final Semaphore processingPermits = new Semaphore(Runtime.getRuntime().availableProcessors());
     private final Map<String, ClassLoaderIsolatedJarProcessorProvider> isolatedProcessorProviders = new ConcurrentHashMap<>();
     private final Map<Thread, Object> resolving = new HashMap<>();
     private volatile boolean closed = false;
 
     public DependencyResolver(final GremlinLogger logger) {
-        this.logger = logger;
-        this.client = HttpClient.newBuilder()
-            .followRedirects(HttpClient.Redirect.NORMAL)
-            .build();
+        this(builder(logger));
+    }
+
+    private DependencyResolver(final Builder builder) {
+        this.logger = builder.logger;
+        this.hedgeDelay = builder.hedgeDelay;
+        this.readTimeout = builder.readTimeout;
+        this.downloadTimeout = builder.downloadTimeout;
+        this.resolutionTimeout = builder.resolutionTimeout;
+        this.maxRetries = builder.maxRetries;
+        this.retryBudget = builder.retryBudget;
+        this.retryBackoff = builder.retryBackoff;
+        this.failFast = builder.failFast;
+        this.preconnect = builder.preconnect;
+        this.hostLimiter = new HostConcurrencyLimiter(builder.initialHostConcurrency, builder.maxHostConcurrency);
+        this.maxConcurrency = builder.maxConcurrency;
+        final boolean shared = builder.shared;
+        if (builder.executorStrategy != null) {
+            this.executorStrategy = builder.executorStrategy;
+        } else {
+            this.executorStrategy = shared ? ExecutorStrategy.executor(SharedResolution.executor()) : ExecutorStrategy.fixedThreadPool();
+        }
+        this.inFlight = shared ? SharedResolution.artifacts() : new InFlightArtifacts();
+        this.offline = builder.offline;
+        this.artifactSources = List.copyOf(builder.artifactSources);
+        this.ownsClient = builder.client == null && !shared;
+        final @Nullable HttpClient providedClient = builder.client;
+        final HttpClient.@Nullable Version httpVersion = builder.httpVersion;
+        final Duration connectTimeout = builder.connectTimeout;
+        final int parallelDownloadConnections = builder.parallelDownloadConnections;
+        final long parallelDownloadChunkSize = builder.parallelDownloadChunkSize;
+        this.networkFactory = () -> {
+            final Supplier<HttpClient> newClient = () -> {
+                final HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .connectTimeout(connectTimeout);
+                if (httpVersion != null) {
+                    clientBuilder.version(httpVersion);
+                }
+                return clientBuilder.build();
+            };
+            final HttpClient client;
+            if (providedClient != null) {
+                client = providedClient;
+            } else {
+                client = shared ? SharedResolution.httpClient(newClient) : newClient.get();
+            }
+            final @Nullable ChunkedDownload chunkedDownload = parallelDownloadConnections > 1
+                ? new ChunkedDownload(
+                    client,
+                    this.hostLimiter,
+                    this.budgetOwner,
+                    parallelDownloadConnections,
+                    parallelDownloadChunkSize,
+                    this.readTimeout,
+                    DependencyResolver::requestBuilder
+                )
+                : null;
+            return new Network(client, chunkedDownload);
+        };
+    }
+
+    public static Builder builder(final GremlinLogger logger) {
+        return new Builder(logger);
     }
 
     /**
@@ -109,11 +207,12 @@ public final class DependencyResolver implements AutoCloseable {
             throw Util.rethrow(e);
         }
 
+        final @Nullable Network network = this.network;
         // JDK 21+
         //noinspection ConstantValue,RedundantClassCall
-        if (AutoCloseable.class.isInstance(this.client)) {
+        if (this.ownsClient && network != null && AutoCloseable.class.isInstance(network.client())) {
             try {
-                ((AutoCloseable) this.client).close();
+                ((AutoCloseable) network.client()).close();
             } catch (final Exception ex) {
                 throw new RuntimeException("Failed to close HttpClient", ex);
             }
@@ -129,28 +228,246 @@ public final class DependencyResolver implements AutoCloseable {
         final DependencyCache cache,
         final DependencyCache extensionDependencyCache
     ) {
-        synchronized (this) {
-            if (this.closed) {
-                throw new IllegalStateException("This " + DependencyResolver.class.getSimpleName() + " has been closed");
-            }
-            this.resolving.put(Thread.currentThread(), new Object());
+        return this.resolve(dependencySet, cache, extensionDependencyCache, NO_LISTENER);
+    }
+
+    /**
+     * Resolve {@code dependencySet}, reporting each dependency to {@code listener} as soon as it is resolved.
+     *
+     * @param dependencySet dependency set
+     * @param cache         cache
+     * @param listener      listener, also determining which dependencies are scheduled first
+     * @return resolved dependencies
+     */
+    public ResolvedDependencySet resolve(
+        final DependencySet dependencySet,
+        final DependencyCache cache,
+        final ResolutionListener listener
+    ) {
+        return this.resolve(dependencySet, cache, cache, listener);
+    }
+
+    /**
+     * Resolve {@code dependencySet}, reporting each dependency to {@code listener} as soon as it is resolved.
+     *
+     * @param dependencySet            dependency set
+     * @param cache                    cache
+     * @param extensionDependencyCache cache for dependencies of extensions
+     * @param listener                 listener, also determining which dependencies are scheduled first
+     * @return resolved dependencies
+     */
+    public ResolvedDependencySet resolve(
+        final DependencySet dependencySet,
+        final DependencyCache cache,
+        final DependencyCache extensionDependencyCache,
+        final ResolutionListener listener
+    ) {
+        this.beginResolving(Thread.currentThread());
+        try {
+            return this.resolve_(dependencySet, cache, extensionDependencyCache, listener);
+        } finally {
+            this.endResolving(Thread.currentThread());
         }
+    }
+
+    /**
+     * Resolve {@code dependencySet} on a background thread, so that the caller can continue initializing and
+     * only wait for the result when the dependencies are first needed.
+     *
+     * <p>This runs the same resolution as {@link #resolve(DependencySet, DependencyCache)} on a dedicated thread
+     * (a virtual thread with {@link ExecutorStrategy#virtualThreads()}); downloads still occupy a resolver thread
+     * each while in progress. Cancelling the returned future cancels outstanding downloads. The resolver can't be
+     * {@link #close() closed} until the future has completed.</p>
+     *
+     * @param dependencySet dependency set
+     * @param cache         cache
+     * @return future completed with the resolved dependencies
+     * @see #resolve(DependencySet, DependencyCache)
+     */
+    public CompletableFuture<ResolvedDependencySet> resolveInBackground(final DependencySet dependencySet, final DependencyCache cache) {
+        return this.resolveInBackground(dependencySet, cache, cache);
+    }
+
+    /**
+     * Resolve {@code dependencySet} on a background thread, so that the caller can continue initializing and
+     * only wait for the result when the dependencies are first needed.
+     *
+     * <p>Cancelling the returned future cancels outstanding downloads. The resolver can't be
+     * {@link #close() closed} until the future has completed.</p>
+     *
+     * @param dependencySet            dependency set
+     * @param cache                    cache
+     * @param extensionDependencyCache cache for dependencies of extensions
+     * @return future completed with the resolved dependencies
+     * @see #resolve(DependencySet, DependencyCache, DependencyCache)
+     */
+    public CompletableFuture<ResolvedDependencySet> resolveInBackground(
+        final DependencySet dependencySet,
+        final DependencyCache cache,
+        final DependencyCache extensionDependencyCache
+    ) {
+        return this.resolveInBackground(dependencySet, cache, extensionDependencyCache, NO_LISTENER);
+    }
+
+    /**
+     * Resolve {@code dependencySet} on a background thread, reporting each dependency to {@code listener} as soon
+     * as it is resolved.
+     *
+     * @param dependencySet dependency set
+     * @param cache         cache
+     * @param listener      listener, also determining which dependencies are scheduled first
+     * @return future completed with the resolved dependencies
+     * @see #resolveInBackground(DependencySet, DependencyCache)
+     */
+    public CompletableFuture<ResolvedDependencySet> resolveInBackground(
+        final DependencySet dependencySet,
+        final DependencyCache cache,
+        final ResolutionListener listener
+    ) {
+        return this.resolveInBackground(dependencySet, cache, cache, listener);
+    }
+
+    /**
+     * Resolve {@code dependencySet} on a background thread, reporting each dependency to {@code listener} as soon
+     * as it is resolved.
+     *
+     * @param dependencySet            dependency set
+     * @param cache                    cache
+     * @param extensionDependencyCache cache for dependencies of extensions
+     * @param listener                 listener, also determining which dependencies are scheduled first
+     * @return future completed with the resolved dependencies
+     * @see #resolveInBackground(DependencySet, DependencyCache, DependencyCache)
+     */
+    public CompletableFuture<ResolvedDependencySet> resolveInBackground(
+        final DependencySet dependencySet,
+        final DependencyCache cache,
+        final DependencyCache extensionDependencyCache,
+        final ResolutionListener listener
+    ) {
+        final ResolutionFuture future = new ResolutionFuture();
+        final Thread thread = this.executorStrategy.newBackgroundThread(this.logger, () -> {
+            @Nullable ResolvedDependencySet result = null;
+            @Nullable Throwable failure = null;
+            try {
+                result = this.resolve_(dependencySet, cache, extensionDependencyCache, listener);
+            } catch (final Throwable t) {
+                failure = t;
+            } finally {
+                // Before completing, so that the resolver can be closed as soon as the future is done
+                this.endResolving(Thread.currentThread());
+            }
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        });
+        // Register before starting, so that close() can't succeed in between
+        this.beginResolving(thread);
+        future.thread = thread;
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Resolve multiple dependency sets as one batch. The sets are resolved concurrently, and dependencies
+     * they have in common are only resolved once.
+     *
+     * <p>If any set fails to resolve, the others are cancelled.</p>
+     *
+     * @param dependencySets dependency sets
+     * @param cache          cache
+     * @return resolved dependencies, in the same order as {@code dependencySets}
+     */
+    public List<ResolvedDependencySet> resolveAll(final List<DependencySet> dependencySets, final DependencyCache cache) {
+        final List<ResolutionFuture> futures = new ArrayList<>(dependencySets.size());
         try {
-            return this.resolve_(dependencySet, cache, extensionDependencyCache);
+            for (final DependencySet dependencySet : dependencySets) {
+                futures.add((ResolutionFuture) this.resolveInBackground(dependencySet, cache));
+            }
+            final List<ResolvedDependencySet> results = new ArrayList<>(futures.size());
+            for (final ResolutionFuture future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (final ExecutionException e) {
+            throw Util.rethrow(e.getCause());
+        } catch (final InterruptedException e) {
+            throw Util.rethrow(e);
         } finally {
-            synchronized (this) {
-                this.resolving.remove(Thread.currentThread());
+            for (final ResolutionFuture future : futures) {
+                future.cancelAndAwait();
             }
         }
     }
 
+    private synchronized void beginResolving(final Thread thread) {
+        if (this.closed) {
+            throw new IllegalStateException("This " + DependencyResolver.class.getSimpleName() + " has been closed");
+        }
+        this.resolving.put(thread, new Object());
+    }
+
+    private synchronized void endResolving(final Thread thread) {
+        this.resolving.remove(thread);
+    }
+
     private ResolvedDependencySet resolve_(
         final DependencySet dependencySet,
         final DependencyCache cache,
-        final DependencyCache extensionDependencyCache
+        final DependencyCache extensionDependencyCache,
+        final ResolutionListener listener
     ) {
+        // Critical dependencies first, then the largest first so that the longest downloads don't end up
+        // starting last and delaying completion. Dependencies with unknown sizes go last within their group.
+        final List<Dependency> dependencies = new ArrayList<>(dependencySet.dependencies());
+        final Set<Dependency> critical = new HashSet<>();
+        for (final Dependency dependency : dependencies) {
+            if (listener.critical(dependency)) {
+                critical.add(dependency);
+            }
+        }
+        dependencies.sort(Comparator.comparing((Dependency dependency) -> !critical.contains(dependency))
+            .thenComparing(Comparator.comparingLong(Dependency::size).reversed()));
+        final long totalBytes = dependencies.stream().mapToLong(dependency -> Math.max(dependency.size(), 0)).sum();
+        final AtomicLong completedBytes = new AtomicLong();
+        final BiConsumer<Dependency, Path> report = (dependency, path) -> {
+            listener.resolved(dependency, path);
+            listener.progress(completedBytes.addAndGet(Math.max(dependency.size(), 0)), totalBytes);
+        };
+
+        final String fingerprint = dependencySet.fingerprint();
+        final WarmStartManifests.@Nullable Manifest manifest = cache.manifests().read(dependencySet, fingerprint);
+        if (manifest != null) {
+            this.logger.debug("Dependency set " + fingerprint + " is unchanged, using warm-start manifest");
+            if (cache.integrity().checksContents() && !intact(dependencySet, cache)) {
+                this.logger.debug("Artifacts referenced by warm-start manifest " + fingerprint + " failed verification");
+            } else if (markUsed(cache, manifest.files())) {
+                final ResolvedDependencySet result = manifest.result();
+                cache.saveMetadata();
+                for (final Dependency dependency : dependencies) {
+                    report.accept(dependency, Objects.requireNonNull(result.map().get(dependency)));
+                }
+                return result;
+            } else {
+                this.logger.debug("Files referenced by warm-start manifest " + fingerprint + " were removed concurrently");
+            }
+        }
+        if (this.offline) {
+            try {
+                this.checkOffline(dependencySet, cache, extensionDependencyCache);
+            } catch (final IOException ex) {
+                throw Util.rethrow(ex);
+            }
+        } else if (this.preconnect && anyMissing(dependencySet, cache)) {
+            // Something needs to be downloaded, get connection setup out of the way while the cache is checked
+            this.preconnect(dependencySet.repositories(), cache);
+        }
+
         final Map<Dependency, Path> resolved = new ConcurrentHashMap<>();
+        final Set<Path> unprocessed = ConcurrentHashMap.newKeySet();
         final AtomicBoolean didWork = new AtomicBoolean(false);
+        final AtomicInteger retryBudget = new AtomicInteger(this.retryBudget);
 
         final Runnable doingWork = () -> {
             if (didWork.compareAndSet(false, true)) {
@@ -158,41 +475,226 @@ public final class DependencyResolver implements AutoCloseable {
             }
         };
 
-        final ExecutorService executor = this.makeExecutor();
+        final ResolutionScope scope = this.executorStrategy.open(this.logger, this.maxConcurrency);
+        try {
+            final Map<String, JarProcessor> processors = this.createJarProcessors(dependencySet, scope, extensionDependencyCache, retryBudget, doingWork);
 
-        final Map<String, JarProcessor> processors = this.createJarProcessors(dependencySet, executor, extensionDependencyCache, doingWork);
+            final List<Callable<Void>> tasks = dependencies.stream().map(dep -> (Callable<Void>) () -> {
+                try {
+                    final FileWithHashes resolve = this.resolve(dep, dependencySet.repositories(), cache, retryBudget, doingWork);
+                    if (!resolve.path().getFileName().toString().endsWith(".jar")) {
+                        resolved.put(dep, resolve.path());
+                        report.accept(dep, resolve.path());
+                        return null;
+                    }
 
-        final List<Callable<Void>> tasks = dependencySet.dependencies().stream().map(dep -> (Callable<Void>) () -> {
-            try {
-                final FileWithHashes resolve = this.resolve(dep, dependencySet.repositories(), cache, doingWork);
-                if (!resolve.path().getFileName().toString().endsWith(".jar")) {
-                    resolved.put(dep, resolve.path());
-                    return null;
+                    final Path processed = processJar(resolve, processors, cache.hashIndex(), cache.locks(), this.processingPermits, this.inFlight, cache.usage(), doingWork);
+
+                    unprocessed.add(resolve.path());
+                    resolved.put(dep, processed);
+                    report.accept(dep, processed);
+                } catch (final IOException | IllegalArgumentException e) {
+                    throw new RuntimeException("Exception resolving " + dep, e);
                 }
+                return null;
+            }).toList();
 
-                final Path processed = processJar(resolve, processors, doingWork);
+            this.executeTasks(scope, tasks);
+        } finally {
+            // Wait for cancelled tasks to exit before saving what they recorded
+            scope.close();
+            cache.saveMetadata();
+            if (extensionDependencyCache != cache) {
+                extensionDependencyCache.saveMetadata();
+            }
+        }
 
-                resolved.put(dep, processed);
-            } catch (final IOException | IllegalArgumentException e) {
-                throw new RuntimeException("Exception resolving " + dep, e);
+        if (didWork.get()) {
+            this.logger.info("Done resolving dependencies.");
+        }
+
+        final ResolvedDependencySet result = new ResolvedDependencySet(Map.copyOf(resolved));
+        final Set<Path> extraFiles = new HashSet<>(unprocessed);
+        if (extensionDependencyCache == cache) {
+            // Referenced by the manifest so that they are marked used by warm starts, and kept while the set is registered
+            extraFiles.addAll(extensionDependencyFiles(dependencySet, cache));
+        }
+        try {
+            cache.manifests().write(dependencySet, fingerprint, result, extraFiles);
+        } catch (final Exception ex) {
+            this.logger.warn("Failed to write warm-start manifest for dependency set " + fingerprint, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Get the HTTP client and related state, creating them on first use. Warm startups that find everything
+     * in the cache never load the HTTP stack or start its selector thread.
+     */
+    private Network network() {
+        @Nullable Network network = this.network;
+        if (network != null) {
+            return network;
+        }
+        synchronized (this.networkFactory) {
+            network = this.network;
+            if (network == null) {
+                if (this.offline) {
+                    throw new IllegalStateException("Network access is disabled in offline mode");
+                }
+                this.logger.debug("Initializing HTTP client");
+                network = this.networkFactory.get();
+                this.network = network;
             }
-            return null;
-        }).toList();
+            return network;
+        }
+    }
 
-        executeTasks(executor, tasks);
+    /**
+     * Check whether any artifact of {@code dependencySet} is missing from {@code cache}, without verifying hashes.
+     */
+    private static boolean anyMissing(final DependencySet dependencySet, final DependencyCache cache) {
+        for (final Dependency dependency : dependencySet.dependencies()) {
+            if (!Files.exists(cache.cacheDirectory().resolve(artifactPath(dependency)))) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        Util.shutdownExecutor(executor, TimeUnit.MILLISECONDS, 50L);
+    /**
+     * In offline mode, fail before doing any work when artifacts are missing from the cache, listing all of them.
+     */
+    private void checkOffline(
+        final DependencySet dependencySet,
+        final DependencyCache cache,
+        final DependencyCache extensionDependencyCache
+    ) throws IOException {
+        final List<String> missing = new ArrayList<>();
+        for (final Dependency dependency : dependencySet.dependencies()) {
+            this.checkOffline(dependency, dependencySet.repositories(), cache, missing);
+        }
+        for (final Map.Entry<String, Extension<?>> entry : dependencySet.extensions().entrySet()) {
+            @SuppressWarnings("unchecked") final Extension<Object> ext = (Extension<Object>) entry.getValue();
+            final @Nullable Object state = dependencySet.extensionData(entry.getKey());
+            if (state == null) {
+                continue;
+            }
+            for (final Dependency dependency : ext.dependencies(state)) {
+                this.checkOffline(dependency, dependencySet.repositories(), extensionDependencyCache, missing);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Cannot resolve dependencies in offline mode, " + missing.size()
+                + " artifact(s) are missing from the cache or don't match their expected hash:\n  " + String.join("\n  ", missing));
+        }
+    }
 
-        if (didWork.get()) {
-            this.logger.info("Done resolving dependencies.");
+    private void checkOffline(
+        final Dependency dependency,
+        final List<String> repositories,
+        final DependencyCache cache,
+        final List<String> missing
+    ) throws IOException {
+        final String mavenArtifactPath = artifactPath(dependency);
+        final Path file = cache.cacheDirectory().resolve(mavenArtifactPath);
+        if (Files.exists(file)) {
+            final ArtifactLocks.Lock lock = cache.locks().acquire(file, true);
+            try {
+                if (existing(dependency, file, cache) != null) {
+                    return;
+                }
+            } finally {
+                lock.close();
+            }
+        }
+        final ArtifactLocks.Lock lock = cache.locks().acquire(file, false);
+        try {
+            if (this.resolveLocally(dependency, repositories, cache, mavenArtifactPath, file, null) == null) {
+                missing.add(dependency + " (" + file + ")");
+            }
+        } finally {
+            lock.close();
         }
+    }
 
-        return new ResolvedDependencySet(Map.copyOf(resolved));
+    /**
+     * Send a {@code HEAD} request to each available repository without waiting for the responses, so that
+     * DNS resolution and TCP/TLS handshakes overlap with local work, and the connections can be reused
+     * for downloads. The responses themselves are irrelevant.
+     */
+    private void preconnect(final List<String> repositories, final DependencyCache cache) {
+        final Set<String> origins = new HashSet<>();
+        for (final String repository : cache.repositoryHealth().rank(repositories)) {
+            final URI uri = artifactUri(repository, "");
+            if ((!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) || !origins.add(uri.getScheme() + "://" + uri.getAuthority())) {
+                continue;
+            }
+            final HttpRequest request = requestBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(this.readTimeout)
+                .build();
+            this.network().client().sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, throwable) ->
+                this.logger.debug("Preconnect to " + uri + ": " + (throwable == null ? "response code " + response.statusCode() : throwable)));
+        }
+    }
+
+    /**
+     * Check the cached artifacts of {@code dependencySet} according to the cache's {@link CacheIntegrity}.
+     *
+     * @return whether every artifact is intact
+     */
+    private static boolean intact(final DependencySet dependencySet, final DependencyCache cache) {
+        for (final Dependency dependency : dependencySet.dependencies()) {
+            final Path file = cache.cacheDirectory().resolve(artifactPath(dependency));
+            try {
+                final ArtifactLocks.Lock lock = cache.locks().acquire(file, true);
+                try {
+                    if (existing(dependency, file, cache) == null) {
+                        return false;
+                    }
+                } finally {
+                    lock.close();
+                }
+            } catch (final IOException ex) {
+                throw Util.rethrow(ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mark {@code files} as used, holding their shared locks so that cleanup can't delete them in between.
+     *
+     * @return whether every file still exists
+     */
+    private static boolean markUsed(final DependencyCache cache, final List<Path> files) {
+        for (final Path file : files) {
+            try {
+                final ArtifactLocks.Lock lock = cache.locks().acquire(file, true);
+                try {
+                    if (!Files.isRegularFile(file)) {
+                        return false;
+                    }
+                    cache.usage().markUsed(file);
+                } finally {
+                    lock.close();
+                }
+            } catch (final IOException ex) {
+                throw Util.rethrow(ex);
+            }
+        }
+        return true;
     }
 
     private static Path processJar(
         final FileWithHashes resolved,
         final Map<String, JarProcessor> processors,
+        final VerifiedHashIndex hashIndex,
+        final ArtifactLocks locks,
+        final Semaphore processingPermits,
+        final InFlightArtifacts inFlight,
+        final UsageJournal usage,
         final Runnable doingWork
     ) throws IOException {
         final Path jarPath = resolved.path();
@@ -203,32 +705,94 @@ public final class DependencyResolver implements AutoCloseable {
             final String extName = processorEntry.getKey();
             final JarProcessor processor = processorEntry.getValue();
 
-            final String postfix = extName + '-' + cacheKey(processor, in, resolved);
+            final String postfix = extName + '-' + cacheKey(processor, in, resolved, hashIndex);
             final String outputName = jarPath.getFileName().toString().replace(".jar", '-' + postfix + ".jar");
             final Path out = jarPath.resolveSibling(outputName);
 
             if (Files.isRegularFile(out)) {
-                writeLastUsed(out);
-                in = out;
-                continue;
+                final ArtifactLocks.Lock lock = locks.acquire(out, true);
+                try {
+                    if (Files.isRegularFile(out)) {
+                        usage.markUsed(out);
+                        in = out;
+                        continue;
+                    }
+                } finally {
+                    lock.close();
+                }
             }
 
             doingWork.run();
-            final Path outTmp = out.resolveSibling(out.getFileName().toString() + ".tmp");
-            Files.deleteIfExists(outTmp);
-            processor.process(in, outTmp);
-            Files.move(outTmp, out);
-            writeLastUsed(out);
+            final InFlightArtifacts.Claim claim;
+            try {
+                claim = inFlight.claim(InFlightArtifacts.processedKey(outputName));
+            } catch (final InterruptedException e) {
+                throw Util.rethrow(e);
+            }
+            try {
+                final ArtifactLocks.Lock lock = locks.acquire(out, false);
+                try {
+                    if (!Files.isRegularFile(out)) {
+                        final Path outTmp = out.resolveSibling(out.getFileName().toString() + '.' + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+                        try {
+                            if (!reuseProcessed(claim.resolved(), out, outTmp)) {
+                                processingPermits.acquireUninterruptibly();
+                                try {
+                                    processor.process(in, outTmp);
+                                } finally {
+                                    processingPermits.release();
+                                }
+                            }
+                            Files.move(outTmp, out, StandardCopyOption.ATOMIC_MOVE);
+                        } finally {
+                            Files.deleteIfExists(outTmp);
+                        }
+                    }
+                    usage.markUsed(out);
+                    claim.complete(out);
+                } finally {
+                    lock.close();
+                }
+            } finally {
+                claim.release();
+            }
             in = out;
         }
 
         return in;
     }
 
-    private static String cacheKey(final JarProcessor processor, final Path input, final FileWithHashes resolved) throws IOException {
+    /**
+     * Link or copy the same output produced for another cache, which has the same cache key, to {@code outTmp}.
+     *
+     * @return whether {@code outTmp} was created
+     */
+    private static boolean reuseProcessed(final @Nullable Path processedElsewhere, final Path out, final Path outTmp) {
+        if (processedElsewhere == null || processedElsewhere.equals(out) || !Files.isRegularFile(processedElsewhere)) {
+            return false;
+        }
+        try {
+            LocalArtifactSources.linkOrCopy(processedElsewhere, outTmp);
+            return true;
+        } catch (final IOException ex) {
+            // Process it ourselves instead
+            try {
+                Files.deleteIfExists(outTmp);
+            } catch (final IOException ignore) {
+            }
+            return false;
+        }
+    }
+
+    private static String cacheKey(
+        final JarProcessor processor,
+        final Path input,
+        final FileWithHashes resolved,
+        final VerifiedHashIndex hashIndex
+    ) throws IOException {
         final String inputHash = input.toAbsolutePath().equals(resolved.path().toAbsolutePath())
-            ? resolved.sha1().asHexString()
-            : HashingAlgorithm.SHA1.hashFile(input).asHexString();
+            ? hashIndex.sha1(resolved).asHexString()
+            : hashIndex.sha1(input).asHexString();
         final @Nullable String processorKey = processor.cacheKey();
         if (processorKey == null) {
             return inputHash;
@@ -239,8 +803,9 @@ public final class DependencyResolver implements AutoCloseable {
 
     private Map<String, JarProcessor> createJarProcessors(
         final DependencySet dependencySet,
-        final ExecutorService executor,
+        final Executor executor,
         final DependencyCache extensionDependencyCache,
+        final AtomicInteger retryBudget,
         final Runnable attemptingDownloadCallback
     ) {
         final Map<String, JarProcessor> processors = new LinkedHashMap<>();
@@ -272,13 +837,13 @@ public final class DependencyResolver implements AutoCloseable {
                 final List<URL> depPaths = new CopyOnWriteArrayList<>();
                 final List<Callable<Void>> tasks = deps.stream().map(dep -> (Callable<Void>) () -> {
                     try {
-                        depPaths.add(this.resolve(dep, dependencySet.repositories(), extensionDependencyCache, attemptingDownloadCallback).path().toUri().toURL());
+                        depPaths.add(this.resolve(dep, dependencySet.repositories(), extensionDependencyCache, retryBudget, attemptingDownloadCallback).path().toUri().toURL());
                         return null;
                     } catch (final IOException ex) {
                         throw Util.rethrow(ex);
                     }
                 }).toList();
-                executeTasks(executor, tasks);
+                this.executeTasks(executor, tasks);
                 depPaths.add(Util.classpathUrl(ext.getClass()));
 
                 final var loader = new URLClassLoader(depPaths.toArray(URL[]::new), ext.getClass().getClassLoader()) {
@@ -300,15 +865,52 @@ public final class DependencyResolver implements AutoCloseable {
         return Collections.unmodifiableMap(processors);
     }
 
+    /**
+     * Get the cached files of the dependencies of {@code dependencySet}'s extensions.
+     */
+    private static List<Path> extensionDependencyFiles(final DependencySet dependencySet, final DependencyCache cache) {
+        final List<Path> files = new ArrayList<>();
+        for (final Map.Entry<String, Extension<?>> entry : dependencySet.extensions().entrySet()) {
+            @SuppressWarnings("unchecked") final Extension<Object> ext = (Extension<Object>) entry.getValue();
+            final @Nullable Object state = dependencySet.extensionData(entry.getKey());
+            if (state == null) {
+                continue;
+            }
+            for (final Dependency dependency : ext.dependencies(state)) {
+                files.add(cache.cacheDirectory().resolve(artifactPath(dependency)));
+            }
+        }
+        return files;
+    }
+
     private static String isolatedProcessorProviderKey(final Extension<Object> ext, final List<Dependency> deps) {
         return ext.getClass().getName() + ':' + ext.processorName() + ':' + deps.hashCode();
     }
 
-    private static void executeTasks(final ExecutorService executor, final List<Callable<Void>> tasks) {
+    /**
+     * Run {@code tasks} on {@code executor} and wait for them to complete, up to the configured resolution timeout.
+     *
+     * <p>When fail-fast is enabled, the remaining tasks are cancelled as soon as one fails. Otherwise,
+     * every task runs to completion and all failures are reported together.</p>
+     */
+    private void executeTasks(final Executor executor, final List<Callable<Void>> tasks) {
+        final CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<Void>> futures = new ArrayList<>(tasks.size());
+        @Nullable RuntimeException err = null;
         try {
-            final List<Future<Void>> result = executor.invokeAll(tasks, 10, TimeUnit.MINUTES);
-            @Nullable RuntimeException err = null;
-            for (final Future<Void> f : result) {
+            for (final Callable<Void> task : tasks) {
+                futures.add(completionService.submit(task));
+            }
+            final long deadline = System.nanoTime() + this.resolutionTimeout.toNanos();
+            for (int i = 0; i < futures.size(); i++) {
+                final @Nullable Future<Void> f = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (f == null) {
+                    if (err == null) {
+                        err = new RuntimeException("Exception(s) resolving dependencies");
+                    }
+                    err.addSuppressed(new TimeoutException("Resolution did not complete within " + this.resolutionTimeout));
+                    break;
+                }
                 try {
                     f.get();
                 } catch (final ExecutionException | CancellationException e) {
@@ -320,19 +922,164 @@ public final class DependencyResolver implements AutoCloseable {
                     } else {
                         err.addSuppressed(e);
                     }
+                    if (this.failFast) {
+                        break;
+                    }
                 }
             }
-            if (err != null) {
-                throw err;
+        } catch (final InterruptedException e) {
+            throw Util.rethrow(e);
+        } finally {
+            for (final Future<Void> f : futures) {
+                f.cancel(true);
+            }
+        }
+        if (err != null) {
+            throw err;
+        }
+    }
+
+    private FileWithHashes resolve(
+        final Dependency dependency,
+        final List<String> repositories,
+        final DependencyCache cache,
+        final AtomicInteger retryBudget,
+        final Runnable attemptingDownloadCallback
+    ) throws IOException {
+        final String mavenArtifactPath = artifactPath(dependency);
+        final Path outputFile = cache.cacheDirectory().resolve(mavenArtifactPath);
+        if (Files.exists(outputFile)) {
+            final ArtifactLocks.Lock lock = cache.locks().acquire(outputFile, true);
+            try {
+                final @Nullable FileWithHashes existing = existing(dependency, outputFile, cache);
+                if (existing != null) {
+                    return existing;
+                }
+            } finally {
+                lock.close();
             }
+        }
+        attemptingDownloadCallback.run();
+        // Make the location known to cleanup, in case an abandoned partial download is left behind
+        cache.usage().markUsed(outputFile);
+        // Claim before locking, the owner of an in-progress resolution may need the same lock
+        final InFlightArtifacts.Claim claim;
+        try {
+            claim = this.inFlight.claim(InFlightArtifacts.artifactKey(dependency));
         } catch (final InterruptedException e) {
             throw Util.rethrow(e);
         }
+        try {
+            final ArtifactLocks.Lock lock = cache.locks().acquire(outputFile, false);
+            try {
+                @Nullable FileWithHashes resolved = this.resolveLocally(dependency, repositories, cache, mavenArtifactPath, outputFile, claim.resolved());
+                if (resolved == null) {
+                    if (this.offline) {
+                        // Removed since checkOffline
+                        throw new IllegalStateException("Cannot resolve %s in offline mode, %s is missing from the cache or doesn't match its expected hash".formatted(dependency, outputFile));
+                    }
+                    resolved = this.download(dependency, repositories, cache, retryBudget, mavenArtifactPath, outputFile);
+                }
+                claim.complete(resolved.path());
+                return resolved;
+            } finally {
+                lock.close();
+            }
+        } finally {
+            claim.release();
+        }
     }
 
-    private FileWithHashes resolve(final Dependency dependency, final List<String> repositories, final DependencyCache cache, final Runnable attemptingDownloadCallback) throws IOException {
-        @Nullable Path resolved = null;
-        final String mavenArtifactPath = String.format(
+    /**
+     * Resolve an artifact without accessing the network, from the cache, a file resolved by another resolution of
+     * the same artifact, or an {@link ArtifactSource}. Must be called while holding the exclusive lock for {@code outputFile}.
+     */
+    private @Nullable FileWithHashes resolveLocally(
+        final Dependency dependency,
+        final List<String> repositories,
+        final DependencyCache cache,
+        final String mavenArtifactPath,
+        final Path outputFile,
+        final @Nullable Path resolvedElsewhere
+    ) throws IOException {
+        // Another thread or process may have published the artifact while we were waiting
+        if (Files.exists(outputFile)) {
+            final @Nullable FileWithHashes existing = existing(dependency, outputFile, cache);
+            if (existing != null) {
+                return existing;
+            }
+            Files.deleteIfExists(outputFile);
+            cache.hashIndex().remove(outputFile);
+        }
+        final List<ArtifactSource> sources = new ArrayList<>();
+        if (resolvedElsewhere != null && !resolvedElsewhere.equals(outputFile)) {
+            sources.add(new LocalArtifactSources.ResolvedFile(resolvedElsewhere));
+        }
+        for (final ArtifactSource source : this.artifactSources(repositories)) {
+            if (source instanceof LocalArtifactSources.GradleModuleCache gradleCache) {
+                // Verify each candidate separately, so that a stale one doesn't hide the right one
+                try {
+                    for (final Path candidate : gradleCache.candidates(dependency, mavenArtifactPath)) {
+                        sources.add(new LocalArtifactSources.ResolvedFile(candidate));
+                    }
+                } catch (final IOException ex) {
+                    this.logger.debug("Failed to resolve " + dependency + " from " + source + ": " + ex);
+                }
+            } else {
+                sources.add(source);
+            }
+        }
+        for (final ArtifactSource source : sources) {
+            final Path tmp = outputFile.resolveSibling(outputFile.getFileName().toString() + '.' + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                if (!source.provide(dependency, mavenArtifactPath, Util.mkParentDirs(tmp))) {
+                    continue;
+                }
+                if (dependency.size() != -1 && Files.size(tmp) != dependency.size()) {
+                    // Cheaper than hashing a file that can't match
+                    this.logger.debug("Artifact for %s from %s has the wrong size (expected: %d, got: %d)".formatted(dependency, source, dependency.size(), Files.size(tmp)));
+                    continue;
+                }
+                final MultiAlgorithmHasher.HashesMap hashes = LOCAL_HASHER.hashFile(tmp);
+                final HashResult sha256 = hashes.hash(HashingAlgorithm.SHA256);
+                if (!dependency.sha256().equalsIgnoreCase(sha256.asHexString())) {
+                    this.logger.debug("Artifact for %s from %s has the wrong hash (expected: %s, got: %s)".formatted(dependency, source, dependency.sha256(), sha256.asHexString()));
+                    continue;
+                }
+                Files.move(tmp, outputFile, StandardCopyOption.ATOMIC_MOVE);
+                final HashResult sha1 = hashes.hash(HashingAlgorithm.SHA1);
+                cache.hashIndex().record(outputFile, sha256, sha1);
+                cache.usage().markUsed(outputFile);
+                this.logger.debug("Resolved " + dependency + " from " + source);
+                return new FileWithHashes(outputFile, sha256, sha1);
+            } catch (final IOException ex) {
+                this.logger.debug("Failed to resolve " + dependency + " from " + source + ": " + ex);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The configured {@link ArtifactSource ArtifactSources}, followed by sources for any {@code file:} repositories.
+     */
+    private List<ArtifactSource> artifactSources(final List<String> repositories) {
+        final List<ArtifactSource> sources = new ArrayList<>(this.artifactSources);
+        for (final String repository : repositories) {
+            if (isFileRepository(repository)) {
+                sources.add(ArtifactSource.directory(Path.of(URI.create(repository))));
+            }
+        }
+        return sources;
+    }
+
+    private static boolean isFileRepository(final String repository) {
+        return repository.regionMatches(true, 0, "file:", 0, 5);
+    }
+
+    static String artifactPath(final Dependency dependency) {
+        return String.format(
             "%s/%s/%s/%s-%s%s.%s",
             dependency.group().replace('.', '/'),
             dependency.name(),
@@ -342,71 +1089,242 @@ public final class DependencyResolver implements AutoCloseable {
             dependency.classifier() == null ? "" : '-' + dependency.classifier(),
             dependency.extension()
         );
-        final Path outputFile = cache.cacheDirectory().resolve(mavenArtifactPath);
-        if (Files.exists(outputFile)) {
-            final FileWithHashes result = withHashes(outputFile);
-            if (dependency.sha256().equalsIgnoreCase(result.sha256().asHexString())) {
-                writeLastUsed(outputFile);
-                return result;
-            }
-            Files.delete(outputFile);
+    }
+
+    private static @Nullable FileWithHashes existing(final Dependency dependency, final Path outputFile, final DependencyCache cache) throws IOException {
+        final FileWithHashes result;
+        try {
+            result = cache.hashIndex().hashSha256(outputFile);
+        } catch (final NoSuchFileException ex) {
+            return null;
         }
-        attemptingDownloadCallback.run();
-        for (String repository : repositories) {
-            if (!repository.endsWith("/")) {
-                repository = repository + '/';
-            }
-            final String urlString = repository + mavenArtifactPath;
+        if (!dependency.sha256().equalsIgnoreCase(result.sha256().asHexString())) {
+            return null;
+        }
+        cache.usage().markUsed(outputFile);
+        return result;
+    }
 
-            final HttpRequest request;
-            try {
-                request = HttpRequest.newBuilder(new URI(urlString))
-                    .GET()
-                    .header(USER_AGENT_HEADER, USER_AGENT)
-                    .build();
-            } catch (final URISyntaxException e) {
-                throw Util.rethrow(e);
-            }
-            final HttpResponse<Path> response;
-            try {
-                this.logger.debug("Attempting download " + urlString);
-                response = this.client.send(request, HttpResponse.BodyHandlers.ofFile(
-                    Util.mkParentDirs(outputFile),
-                    StandardOpenOption.TRUNCATE_EXISTING,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.WRITE
-                ));
-            } catch (final InterruptedException e) {
-                throw Util.rethrow(e);
+    /**
+     * Download an artifact that isn't cached yet. Must be called while holding the exclusive lock for {@code outputFile}.
+     */
+    private FileWithHashes download(
+        final Dependency dependency,
+        final List<String> repositories,
+        final DependencyCache cache,
+        final AtomicInteger retryBudget,
+        final String mavenArtifactPath,
+        final Path outputFile
+    ) throws IOException {
+        @Nullable FileWithHashes resolved = null;
+        final RepositoryHealth health = cache.repositoryHealth();
+        // file: repositories were already checked as artifact sources
+        final List<String> remote = repositories.stream().filter(repository -> !isFileRepository(repository)).toList();
+        final List<String> routed = cache.repositoryRoutes().order(dependency, health.rank(remote));
+        final List<String> candidates = this.hedgeDelay != null && routed.size() > 1
+            ? this.hedgedOrder(routed, mavenArtifactPath, this.hedgeDelay)
+            : routed;
+        final List<IOException> failures = new ArrayList<>();
+        final PartialDownload partial = new PartialDownload(outputFile, dependency.size());
+        for (final String repository : candidates) {
+            final URI uri = artifactUri(repository, mavenArtifactPath);
+            // Starting over without the partial file is only needed once per repository, and doesn't count as a retry
+            boolean restarted = false;
+            for (int attempt = 0; ; ) {
+                this.logger.debug("Attempting download " + uri);
+                final DownloadAttempt download = this.download(uri, partial);
+                final @Nullable HttpResponse<@Nullable FileWithHashes> response = download.response();
+                final boolean retryable;
+                if (response == null) {
+                    final IOException failure = Objects.requireNonNull(download.failure());
+                    this.logger.debug("Failed to download " + uri + ": " + failure);
+                    failures.add(failure);
+                    if (failure instanceof PartialDownload.UnusableResponseException) {
+                        // The repository answered, but not with the artifact; start over at the next one
+                        health.recordReachable(repository);
+                        partial.discard();
+                        break;
+                    }
+                    health.recordFailure(repository, failure instanceof HttpTimeoutException);
+                    retryable = true;
+                } else if (response.statusCode() == 416) {
+                    partial.rangeNotSatisfiable();
+                    if (restarted) {
+                        this.logger.debug("Failed to download " + uri + ": range request could not be satisfied after restarting");
+                        failures.add(new IOException("Range request for " + uri + " could not be satisfied"));
+                        break;
+                    }
+                    this.logger.debug("Range request for " + uri + " could not be satisfied, restarting");
+                    restarted = true;
+                    continue;
+                } else if (response.body() == null) {
+                    this.logger.debug("Failed to download " + uri + ": response code " + response.statusCode());
+                    if (response.statusCode() >= 500 && download.retryAfter() == null) {
+                        health.recordFailure(repository, false);
+                    } else {
+                        // The repository answered, it just doesn't have the artifact
+                        health.recordReachable(repository);
+                    }
+                    if (response.statusCode() == 404) {
+                        cache.repositoryRoutes().recordMiss(dependency, repository);
+                    }
+                    retryable = response.statusCode() >= 500 || response.statusCode() == 429;
+                } else {
+                    final FileWithHashes body = response.body();
+                    if (partial.resumed() && !restarted && !dependency.sha256().equalsIgnoreCase(body.sha256().asHexString())) {
+                        // The existing bytes didn't belong to this artifact, start over
+                        this.logger.debug("Resumed download of " + uri + " has the wrong hash, restarting");
+                        partial.discard();
+                        restarted = true;
+                        continue;
+                    }
+                    this.logger.debug((partial.resumed() ? "Successfully resumed download " : "Successfully downloaded ") + uri);
+                    health.recordSuccess(repository, TimeUnit.NANOSECONDS.toMillis(download.responseNanos()));
+                    cache.repositoryRoutes().recordHit(dependency, repository);
+                    resolved = body;
+                    break;
+                }
+                if (!retryable || attempt >= this.maxRetries || retryBudget.getAndDecrement() <= 0) {
+                    break;
+                }
+                this.backoff(uri, attempt++, download.retryAfter());
             }
-            if (response == null || response.statusCode() != 200) {
-                this.logger.debug("Failed to download " + urlString + ": " + (response == null ? "null response" : "response code " + response.statusCode()));
-                continue;
+            if (resolved != null) {
+                break;
             }
-            this.logger.debug("Successfully downloaded " + urlString);
-            resolved = response.body();
-            break;
         }
         if (resolved == null) {
-            throw new IllegalStateException("Could not resolve %s from any of %s".formatted(dependency, repositories));
+            final IllegalStateException ex = new IllegalStateException("Could not resolve %s from any of %s".formatted(dependency, repositories));
+            failures.forEach(ex::addSuppressed);
+            throw ex;
+        }
+
+        if (!dependency.sha256().equalsIgnoreCase(resolved.sha256().asHexString())) {
+            partial.discard();
+            throw new IllegalStateException("Hash for downloaded file %s was incorrect (expected: %s, got: %s)".formatted(outputFile, dependency.sha256(), resolved.sha256().asHexString()));
         }
+        resolved = partial.publish(resolved, outputFile);
 
-        final FileWithHashes result = withHashes(resolved);
+        cache.hashIndex().record(resolved.path(), resolved.sha256(), resolved.sha1());
+        cache.usage().markUsed(resolved.path());
+        return resolved;
+    }
 
-        if (!dependency.sha256().equalsIgnoreCase(result.sha256().asHexString())) {
-            throw new IllegalStateException("Hash for downloaded file %s was incorrect (expected: %s, got: %s)".formatted(resolved, dependency.sha256(), result.sha256().asHexString()));
+    /**
+     * Download {@code uri} into {@code partial}, resuming it if possible, and enforcing the configured
+     * download timeout on the whole exchange including the body.
+     */
+    private DownloadAttempt download(final URI uri, final PartialDownload partial) throws IOException {
+        final Network network = this.network();
+        final HttpRequest request = partial.prepare(uri, requestBuilder(uri), network.chunkedDownload()).GET().timeout(this.readTimeout).build();
+        final HttpResponse.BodyHandler<@Nullable FileWithHashes> handler = partial.handler(uri);
+        final HostConcurrencyLimiter.Permit permit = this.hostLimiter.acquire(uri);
+        try {
+            final long queued = DownloadBudget.acquire(this.budgetOwner);
+            if (queued > 0) {
+                this.logger.debug("Waited " + TimeUnit.NANOSECONDS.toMillis(queued) + "ms for a download slot for " + uri);
+            }
+        } catch (final InterruptedException e) {
+            permit.release();
+            throw Util.rethrow(e);
+        }
+        final AtomicLong responseNanos = new AtomicLong();
+        final long start = System.nanoTime();
+        final CompletableFuture<HttpResponse<@Nullable FileWithHashes>> future = network.client().sendAsync(request, info -> {
+            responseNanos.set(System.nanoTime() - start);
+            return handler.apply(info);
+        });
+        try {
+            final HttpResponse<@Nullable FileWithHashes> response = future.get(this.downloadTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            final @Nullable FileWithHashes body = response.body();
+            final @Nullable Duration retryAfter = response.statusCode() == 429 || response.statusCode() == 503
+                ? HostConcurrencyLimiter.retryAfter(response.headers())
+                : null;
+            if (body != null) {
+                permit.completed(Files.size(body.path()), System.nanoTime() - start);
+            } else if (response.statusCode() == 429 || retryAfter != null) {
+                permit.throttled(retryAfter);
+            } else if (response.statusCode() >= 500) {
+                permit.failed();
+            }
+            return new DownloadAttempt(response, responseNanos.get(), null, retryAfter);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            partial.abort();
+            permit.failed();
+            return new DownloadAttempt(null, 0, new HttpTimeoutException("Download of " + uri + " did not complete within " + this.downloadTimeout), null);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                if (io instanceof PartialDownload.UnusableResponseException) {
+                    permit.release();
+                } else {
+                    permit.failed();
+                }
+                return new DownloadAttempt(null, 0, io, null);
+            }
+            throw Util.rethrow(e.getCause());
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            partial.abort();
+            throw Util.rethrow(e);
+        } finally {
+            DownloadBudget.release(this.budgetOwner);
+            permit.release();
+        }
+    }
+
+    private void backoff(final URI uri, final int attempt, final @Nullable Duration retryAfter) {
+        final long base = this.retryBackoff.toMillis() << Math.min(attempt, 16);
+        // Full jitter, so that parallel downloads retrying against the same repository spread out
+        final long jittered = ThreadLocalRandom.current().nextLong(base / 2, base + 1);
+        final long delay = retryAfter == null ? jittered : Math.max(jittered, retryAfter.toMillis());
+        this.logger.debug("Retrying " + uri + " in " + delay + "ms");
+        try {
+            Thread.sleep(delay);
+        } catch (final InterruptedException e) {
+            throw Util.rethrow(e);
         }
+    }
 
-        writeLastUsed(resolved);
-        return result;
+    /**
+     * Probe {@code repositories} for the artifact using a {@link HedgedProbe} and move the
+     * winner to the front. When no repository answers the probe successfully (for example
+     * because it doesn't support {@code HEAD}), the original order is kept.
+     */
+    private List<String> hedgedOrder(final List<String> repositories, final String mavenArtifactPath, final Duration delay) {
+        final List<URI> uris = repositories.stream().map(repo -> artifactUri(repo, mavenArtifactPath)).toList();
+        final int winner = HedgedProbe.probe(this.network().client(), this.logger, uris, delay, this.readTimeout, DependencyResolver::requestBuilder);
+        if (winner <= 0) {
+            return repositories;
+        }
+        final List<String> ordered = new ArrayList<>(repositories.size());
+        ordered.add(repositories.get(winner));
+        for (int i = 0; i < repositories.size(); i++) {
+            if (i != winner) {
+                ordered.add(repositories.get(i));
+            }
+        }
+        return ordered;
+    }
+
+    private static URI artifactUri(String repository, final String mavenArtifactPath) {
+        if (!repository.endsWith("/")) {
+            repository = repository + '/';
+        }
+        try {
+            return new URI(repository + mavenArtifactPath);
+        } catch (final URISyntaxException e) {
+            throw Util.rethrow(e);
+        }
     }
 
-    private static FileWithHashes withHashes(final Path file) throws IOException {
-        final var hashes = MULTI_HASHER.hashFile(file);
-        return new FileWithHashes(file, hashes.hash(HashingAlgorithm.SHA256), hashes.hash(HashingAlgorithm.SHA1));
+    private static HttpRequest.Builder requestBuilder(final URI uri) {
+        return requestBuilder(HttpRequest.newBuilder(uri));
     }
 
-    private record FileWithHashes(Path path, HashResult sha256, HashResult sha1) {}
+    private static HttpRequest.Builder requestBuilder(final HttpRequest.Builder builder) {
+        return builder.header(USER_AGENT_HEADER, USER_AGENT);
+    }
 
     private static String nonUniqueSnapshotIfSnapshot(final String version) {
         final Matcher matcher = UNIQUE_SNAPSHOT.matcher(version);
@@ -417,37 +1335,58 @@ public final class DependencyResolver implements AutoCloseable {
         return version;
     }
 
-    private static void writeLastUsed(final Path f) {
-        final Path file = lastUsedFile(f);
-        try {
-            Files.writeString(file, String.valueOf(System.currentTimeMillis()));
-        } catch (final IOException ex) {
-            throw Util.rethrow(ex);
-        }
-    }
+    /**
+     * Future for {@link #resolveInBackground}, interrupting the thread coordinating the resolution when cancelled.
+     */
+    private static final class ResolutionFuture extends CompletableFuture<ResolvedDependencySet> {
+        private volatile @Nullable Thread thread;
 
-    static Path lastUsedFile(final Path f) {
-        return f.resolveSibling(f.getFileName().toString() + ".last-used.txt");
-    }
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            final @Nullable Thread thread = this.thread;
+            if (cancelled && thread != null) {
+                thread.interrupt();
+            }
+            return cancelled;
+        }
 
-    static long lastUsed(final Path f) {
-        final Path file = lastUsedFile(f);
-        if (!Files.isRegularFile(file)) {
-            return -1;
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            // Dependent stages don't own the resolution
+            return new CompletableFuture<>();
         }
-        try {
-            return Long.parseLong(Files.readString(file));
-        } catch (final Exception e) {
-            throw Util.rethrow(e);
+
+        /**
+         * Cancel the resolution if it is still running, and wait for it to exit so that the resolver can be closed.
+         */
+        void cancelAndAwait() {
+            final @Nullable Thread thread = this.thread;
+            if (!this.cancel(true) || thread == null) {
+                return;
+            }
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
-    private ExecutorService makeExecutor() {
-        return Executors.newFixedThreadPool(
-            Math.min(4, Runtime.getRuntime().availableProcessors()),
-            new ResolverThreadFactory(this.logger)
-        );
-    }
+    private record Network(HttpClient client, @Nullable ChunkedDownload chunkedDownload) {}
+
+    private record DownloadAttempt(
+        @Nullable HttpResponse<@Nullable FileWithHashes> response,
+        long responseNanos,
+        @Nullable IOException failure,
+        @Nullable Duration retryAfter
+    ) {}
 
     private record ClassLoaderIsolatedJarProcessorProvider(URLClassLoader loader, Constructor<?> processorConstructor) {
         JarProcessor processor(final Object config) {
@@ -485,30 +1424,361 @@ public final class DependencyResolver implements AutoCloseable {
         }
     }
 
-    private static final class ResolverThreadFactory implements ThreadFactory {
-        private static final AtomicInteger poolNumber = new AtomicInteger(1);
-        private final AtomicInteger threadNumber = new AtomicInteger(1);
-        private final String namePrefix;
+    public static final class Builder {
         private final GremlinLogger logger;
+        private @Nullable Duration hedgeDelay;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration readTimeout = Duration.ofSeconds(30);
+        private Duration downloadTimeout = Duration.ofMinutes(5);
+        private Duration resolutionTimeout = Duration.ofMinutes(10);
+        private int maxRetries = 2;
+        private int retryBudget = 10;
+        private Duration retryBackoff = Duration.ofMillis(250);
+        private boolean failFast = false;
+        private int parallelDownloadConnections = 1;
+        // null uses the HttpClient default
+        private HttpClient.@Nullable Version httpVersion;
+        private @Nullable HttpClient client;
+        private boolean preconnect = false;
+        private boolean offline = false;
+        private final List<ArtifactSource> artifactSources = new ArrayList<>();
+        private int maxConcurrency = Math.min(4, Runtime.getRuntime().availableProcessors());
+        private @Nullable ExecutorStrategy executorStrategy;
+        private boolean shared = false;
+        private int initialHostConcurrency = 2;
+        private int maxHostConcurrency = 16;
+        private long parallelDownloadChunkSize = 8L * 1024 * 1024;
 
-        ResolverThreadFactory(final GremlinLogger logger) {
-            this.namePrefix = DependencyResolver.class.getSimpleName() + "-pool-" + poolNumber.getAndIncrement() + "-thread-";
+        private Builder(final GremlinLogger logger) {
             this.logger = logger;
         }
 
-        @Override
-        public Thread newThread(final Runnable runnable) {
-            final Thread thr = new Thread(
-                null,
-                runnable,
-                this.namePrefix + this.threadNumber.getAndIncrement(),
-                0
-            );
-            thr.setDaemon(true);
-            thr.setPriority(Thread.NORM_PRIORITY);
-            thr.setUncaughtExceptionHandler((thread, throwable) -> this.logger.warn("Uncaught exception on thread " + thread.getName(), throwable));
-            return thr;
+        /**
+         * Enables hedged repository lookups.
+         *
+         * <p>Instead of waiting for each repository to respond before trying the next, an
+         * existence probe is sent to the first repository immediately, and to each following
+         * repository after {@code hedgeDelay} elapses without a successful response (or as soon
+         * as an earlier probe fails). The artifact is then downloaded from the first repository
+         * that responded successfully, and the remaining probes are cancelled.</p>
+         *
+         * <p>A delay of {@link Duration#ZERO} probes all repositories at once.</p>
+         *
+         * @param hedgeDelay delay between probes, or {@code null} to disable hedging (the default)
+         * @return this builder
+         */
+        public Builder hedgeRepositoryLookups(final @Nullable Duration hedgeDelay) {
+            if (hedgeDelay != null && hedgeDelay.isNegative()) {
+                throw new IllegalArgumentException("hedgeDelay must not be negative");
+            }
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a connection to a repository to be established.
+         *
+         * <p>Defaults to 10 seconds.</p>
+         *
+         * @param connectTimeout connect timeout
+         * @return this builder
+         */
+        public Builder connectTimeout(final Duration connectTimeout) {
+            this.connectTimeout = positive(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a repository to start responding to a request.
+         *
+         * <p>Defaults to 30 seconds.</p>
+         *
+         * @param readTimeout read timeout
+         * @return this builder
+         */
+        public Builder readTimeout(final Duration readTimeout) {
+            this.readTimeout = positive(readTimeout, "readTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the total deadline for a single download, including receiving the body.
+         *
+         * <p>Defaults to 5 minutes.</p>
+         *
+         * @param downloadTimeout download timeout
+         * @return this builder
+         */
+        public Builder downloadTimeout(final Duration downloadTimeout) {
+            this.downloadTimeout = positive(downloadTimeout, "downloadTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the total deadline for resolving a {@link DependencySet}, after which any
+         * outstanding work is cancelled.
+         *
+         * <p>Defaults to 10 minutes.</p>
+         *
+         * @param resolutionTimeout resolution timeout
+         * @return this builder
+         */
+        public Builder resolutionTimeout(final Duration resolutionTimeout) {
+            this.resolutionTimeout = positive(resolutionTimeout, "resolutionTimeout");
+            return this;
+        }
+
+        /**
+         * Configures retrying of transient failures (I/O errors, timeouts, and {@code 5xx} responses).
+         *
+         * <p>Each request is retried against the same repository up to {@code maxRetries} times, waiting
+         * {@code backoff} (doubled on each attempt, with jitter) between attempts, before moving on to the
+         * next repository. Retries are also limited by the {@link #retryBudget(int) retry budget}.</p>
+         *
+         * <p>Defaults to 2 retries with a 250 millisecond backoff.</p>
+         *
+         * @param maxRetries max retries per request, {@code 0} disables retrying
+         * @param backoff    initial backoff
+         * @return this builder
+         */
+        public Builder retries(final int maxRetries, final Duration backoff) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries must not be negative");
+            }
+            if (backoff.isNegative()) {
+                throw new IllegalArgumentException("backoff must not be negative");
+            }
+            this.maxRetries = maxRetries;
+            this.retryBackoff = backoff;
+            return this;
+        }
+
+        /**
+         * Sets the total number of retries allowed while resolving a single {@link DependencySet}, so
+         * that a repository outage can't multiply startup time by the number of dependencies.
+         *
+         * <p>Defaults to 10.</p>
+         *
+         * @param retryBudget retry budget
+         * @return this builder
+         */
+        public Builder retryBudget(final int retryBudget) {
+            if (retryBudget < 0) {
+                throw new IllegalArgumentException("retryBudget must not be negative");
+            }
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
+        /**
+         * Sets whether to cancel all outstanding work as soon as any dependency fails to resolve.
+         *
+         * <p>When disabled (the default), every dependency is attempted and all failures are
+         * reported together.</p>
+         *
+         * @param failFast whether to fail fast
+         * @return this builder
+         */
+        public Builder failFast(final boolean failFast) {
+            this.failFast = failFast;
+            return this;
+        }
+
+        /**
+         * Configures downloading large artifacts over multiple connections.
+         *
+         * <p>Only the first {@code chunkSize} bytes of an artifact are requested initially. If the
+         * artifact is larger, the remaining bytes are requested in {@code chunkSize} ranges, with up to
+         * {@code maxConnections} in flight at once. Repositories that don't support range requests
+         * simply send the whole artifact in response to the first request.</p>
+         *
+         * <p>Disabled by default. For example, {@code parallelDownloads(4, 8L * 1024 * 1024)} uses
+         * up to 4 connections and 8 MiB chunks.</p>
+         *
+         * @param maxConnections max connections per artifact, {@code 1} disables parallel downloads
+         * @param chunkSize      chunk size in bytes
+         * @return this builder
+         */
+        public Builder parallelDownloads(final int maxConnections, final long chunkSize) {
+            if (maxConnections < 1) {
+                throw new IllegalArgumentException("maxConnections must be at least 1");
+            }
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive");
+            }
+            this.parallelDownloadConnections = maxConnections;
+            this.parallelDownloadChunkSize = chunkSize;
+            return this;
         }
-    }
 
+        /**
+         * Sets the preferred HTTP version. Connections fall back to HTTP/1.1 when the repository
+         * doesn't support HTTP/2.
+         *
+         * <p>Defaults to the {@link HttpClient} default. {@link HttpClient.Version#HTTP_2} multiplexes
+         * concurrent downloads from the same repository over a single connection.</p>
+         *
+         * @param httpVersion http version
+         * @return this builder
+         */
+        public Builder httpVersion(final HttpClient.Version httpVersion) {
+            this.httpVersion = httpVersion;
+            return this;
+        }
+
+        /**
+         * Sets the {@link HttpClient} to use, for example to share connections between multiple
+         * resolvers. The client is not closed when the resolver is closed, and the
+         * {@link #connectTimeout(Duration) connect timeout} and {@link #httpVersion(HttpClient.Version) http version}
+         * are not applied to it.
+         *
+         * <p>By default, each resolver creates its own client when it first needs to download something,
+         * which reuses connections across {@code resolve} calls until the resolver is closed.</p>
+         *
+         * @param client http client, or {@code null} to create one
+         * @return this builder
+         */
+        public Builder httpClient(final @Nullable HttpClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Sets whether to speculatively connect to the configured repositories as soon as it's known that
+         * a dependency set can't be restored from its warm-start manifest and some of its artifacts are
+         * missing from the cache, so that connection setup overlaps with checking the cache.
+         *
+         * <p>Disabled by default.</p>
+         *
+         * @param preconnect whether to preconnect
+         * @return this builder
+         */
+        public Builder speculativePreconnect(final boolean preconnect) {
+            this.preconnect = preconnect;
+            return this;
+        }
+
+        /**
+         * Sets whether to resolve dependencies from the cache only, never accessing the network.
+         *
+         * <p>In offline mode, artifacts can still be resolved from {@link #addArtifactSource(ArtifactSource) artifact sources}
+         * and {@code file:} repositories. Resolution fails before doing any work when artifacts are missing from all of them
+         * (or don't match their expected hash), listing every missing artifact.</p>
+         *
+         * <p>Disabled by default.</p>
+         *
+         * @param offline whether to work offline
+         * @return this builder
+         */
+        public Builder offline(final boolean offline) {
+            this.offline = offline;
+            return this;
+        }
+
+        /**
+         * Adds a source checked for artifacts that are missing from the cache, before any remote repository.
+         * Sources are checked in the order they were added, and {@code file:} repositories are checked after them.
+         *
+         * <p>For example, {@link ArtifactSource#mavenLocal()} and {@link ArtifactSource#gradleCache()} avoid
+         * downloading artifacts that are already present on development machines and CI images. Artifacts are
+         * hard linked into the cache where possible, and copied otherwise.</p>
+         *
+         * @param source artifact source
+         * @return this builder
+         */
+        public Builder addArtifactSource(final ArtifactSource source) {
+            this.artifactSources.add(source);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of dependencies resolved at once when using {@link ExecutorStrategy#fixedThreadPool()}.
+         *
+         * <p>Defaults to the number of available processors, up to 4. The number of concurrent downloads from each repository host is further limited
+         * by {@link #hostConcurrency(int, int)}, and jar processing is limited to the number of available
+         * processors. By default the host limit starts below this and rises to it while a host keeps up.</p>
+         *
+         * @param maxConcurrency max concurrency
+         * @return this builder
+         */
+        public Builder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be at least 1");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Configures the adaptive limit on concurrent downloads from each repository host.
+         *
+         * <p>The limit starts at {@code initial}, grows while downloads succeed with steady throughput (up to
+         * {@code max}), and shrinks when the host throttles requests with {@code 429} responses, fails, or
+         * throughput collapses. While a {@code Retry-After} delay is in effect no new requests are sent to the host.</p>
+         *
+         * <p>Defaults to an initial limit of 2 and a maximum of 16. The limit only binds while it is below the number
+         * of downloads that are otherwise attempted at once, which for {@link ExecutorStrategy#fixedThreadPool()} is
+         * {@link #maxConcurrency(int) maxConcurrency}, so growing past that has no effect there.</p>
+         *
+         * @param initial initial limit
+         * @param max     max limit
+         * @return this builder
+         */
+        public Builder hostConcurrency(final int initial, final int max) {
+            if (initial < 1 || max < initial) {
+                throw new IllegalArgumentException("Limits must satisfy 1 <= initial <= max");
+            }
+            this.initialHostConcurrency = initial;
+            this.maxHostConcurrency = max;
+            return this;
+        }
+
+        /**
+         * Sets the strategy determining which threads dependencies are resolved on.
+         *
+         * <p>Defaults to {@link ExecutorStrategy#fixedThreadPool()}, or the JVM-wide executor for {@link #shared(boolean) shared}
+         * resolvers. {@link ExecutorStrategy#virtualThreadsIfAvailable()} avoids creating a pool for each {@code resolve}
+         * call on Java 21 and newer.</p>
+         *
+         * @param executorStrategy executor strategy
+         * @return this builder
+         */
+        public Builder executorStrategy(final ExecutorStrategy executorStrategy) {
+            this.executorStrategy = executorStrategy;
+            return this;
+        }
+
+        /**
+         * Sets whether to share resolution state with every other shared resolver in the JVM, including those of other
+         * plugins using gremlin.
+         *
+         * <p>Shared resolvers use one HTTP client and executor, and resolve each artifact only once: concurrent
+         * resolutions of the same artifact wait for the first one, and later ones (for example after a plugin reload)
+         * reuse its file, even when they use different caches. Files are still verified against the expected hash
+         * and hard linked or copied into each cache.</p>
+         *
+         * <p>The HTTP client is created with the settings of the first shared resolver that needs it.</p>
+         *
+         * <p>Defaults to {@code false}. Concurrent resolutions of the same artifact by a single resolver are always
+         * deduplicated.</p>
+         *
+         * @param shared whether to share resolution state
+         * @return this builder
+         */
+        public Builder shared(final boolean shared) {
+            this.shared = shared;
+            return this;
+        }
+
+        public DependencyResolver build() {
+            return new DependencyResolver(this);
+        }
+
+        private static Duration positive(final Duration duration, final String name) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return duration;
+        }
+    }
 }
@@ -27,8 +27,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.HashingAlgorithm;
 
 @NullMarked
 public record DependencySet(
@@ -46,6 +48,35 @@ public record DependencySet(
         return (S) o;
     }
 
+    /**
+     * Computes a fingerprint of this dependency set, covering the repositories, dependencies,
+     * and extension configuration. Equal fingerprints mean resolution will produce the same result.
+     *
+     * @return fingerprint
+     */
+    public String fingerprint() {
+        final StringBuilder sb = new StringBuilder("v1\n");
+        for (final String repository : this.repositories) {
+            sb.append("repo ").append(repository).append('\n');
+        }
+        for (final Dependency dependency : this.dependencies) {
+            sb.append("dep ").append(dependency).append('\n');
+        }
+        for (final Map.Entry<String, Extension<?>> entry : new TreeMap<>(this.extensions).entrySet()) {
+            @SuppressWarnings("unchecked") final Extension<Object> ext = (Extension<Object>) entry.getValue();
+            final @Nullable Object data = this.extensionData(entry.getKey());
+            if (data == null) {
+                continue;
+            }
+            sb.append("ext ").append(entry.getKey())
+                .append(' ').append(ext.getClass().getName())
+                .append(' ').append(ext.processorName())
+                .append(' ').append(ext.configFingerprint(data))
+                .append('\n');
+        }
+        return HashingAlgorithm.SHA256.hashString(sb.toString()).asHexString();
+    }
+
     public static Map<String, Extension<?>> defaultExtensions() {
         return Map.of("relocation", new RelocationExtension());
     }
@@ -121,7 +152,8 @@ public record DependencySet(
                     case "repos" -> repositories.add(line);
                     case "deps" -> {
                         final String[] split = line.split(" ");
-                        dependencies.add(Dependency.parse(split[0], split[1]));
+                        // The size was added later and is optional
+                        dependencies.add(Dependency.parse(split[0], split[1], split.length > 2 ? Long.parseLong(split[2]) : -1));
                     }
                     default -> extraSections.computeIfAbsent(currentSection, $ -> new ArrayList<>()).add(line);
                 }
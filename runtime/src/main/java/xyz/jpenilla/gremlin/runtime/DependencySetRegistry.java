@@ -0,0 +1,175 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Registry of the {@link DependencySet dependency sets} each owner, for example a plugin, currently
+ * uses from a {@link DependencyCache}, by {@link DependencySet#fingerprint() fingerprint}.
+ *
+ * <p>The files each registered set references are listed by its {@link WarmStartManifests warm-start
+ * manifest}. Registering replaces the owner's previous sets, which stops them from being referenced
+ * on its behalf. Replaced sets are remembered as retired for a while, so that their recent uses can be
+ * told apart from those of users that never register.</p>
+ *
+ * <p>The registry is rewritten atomically while holding the exclusive {@link ArtifactLocks artifact lock}
+ * for its file.</p>
+ */
+@NullMarked
+final class DependencySetRegistry {
+    private static final String FILE_NAME = "registered-sets.txt";
+    private static final String HEADER = "gremlin-registered-sets v2";
+    private static final String HEADER_V1 = "gremlin-registered-sets v1";
+    private static final String RETIRED = "retired";
+    private static final long RETIRED_RETENTION_MILLIS = Duration.ofDays(30).toMillis();
+
+    private final Path file;
+    private final ArtifactLocks locks;
+
+    DependencySetRegistry(final Path metadataDirectory, final ArtifactLocks locks) {
+        this.file = metadataDirectory.resolve(FILE_NAME);
+        this.locks = locks;
+    }
+
+    /**
+     * Replace the fingerprints registered for {@code owner}.
+     *
+     * @param owner        owner
+     * @param fingerprints fingerprints, or none to unregister {@code owner}
+     */
+    void register(final String owner, final Set<String> fingerprints) {
+        try {
+            final ArtifactLocks.Lock lock = this.locks.acquire(this.file, false);
+            try {
+                final State state = this.read();
+                final Map<String, Set<String>> registered = state.registered();
+                final Map<String, Long> retired = state.retired();
+                final Set<String> previous = registered.getOrDefault(owner, Set.of());
+                if (previous.equals(fingerprints)) {
+                    return;
+                }
+                if (fingerprints.isEmpty()) {
+                    registered.remove(owner);
+                } else {
+                    registered.put(owner, new TreeSet<>(fingerprints));
+                }
+                final long now = System.currentTimeMillis();
+                for (final String fingerprint : previous) {
+                    retired.put(fingerprint, now);
+                }
+                retired.values().removeIf(retiredAt -> now - retiredAt > RETIRED_RETENTION_MILLIS);
+                registered.values().forEach(set -> retired.keySet().removeAll(set));
+                final StringBuilder sb = new StringBuilder(HEADER).append('\n');
+                registered.forEach((o, set) -> set.forEach(fingerprint ->
+                    sb.append(o).append('\t').append(fingerprint).append('\n')));
+                retired.forEach((fingerprint, retiredAt) ->
+                    sb.append(RETIRED).append('\t').append(fingerprint).append('\t').append(retiredAt).append('\n'));
+                final Path tmp = Files.createTempFile(Util.mkParentDirs(this.file).getParent(), FILE_NAME, ".tmp");
+                Files.writeString(tmp, sb);
+                Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                lock.close();
+            }
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        }
+    }
+
+    /**
+     * Get the fingerprints registered by any owner.
+     *
+     * @return registered fingerprints
+     */
+    Set<String> fingerprints() {
+        final Set<String> fingerprints = new HashSet<>();
+        try {
+            this.read().registered().values().forEach(fingerprints::addAll);
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Get the fingerprints registered by any owner, and those retired by a later registration within
+     * the last 30 days.
+     *
+     * @return registered and retired fingerprints
+     */
+    Set<String> knownFingerprints() {
+        final Set<String> fingerprints = new HashSet<>();
+        try {
+            final State state = this.read();
+            state.registered().values().forEach(fingerprints::addAll);
+            fingerprints.addAll(state.retired().keySet());
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        }
+        return fingerprints;
+    }
+
+    private State read() throws IOException {
+        final State state = new State(new TreeMap<>(), new TreeMap<>());
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(this.file);
+        } catch (final NoSuchFileException ex) {
+            return state;
+        }
+        if (lines.isEmpty() || !(lines.get(0).equals(HEADER) || lines.get(0).equals(HEADER_V1))) {
+            throw new IOException("Unrecognized registry format in " + this.file);
+        }
+        for (final String line : lines.subList(1, lines.size())) {
+            final String[] split = line.split("\t");
+            if (split.length == 2) {
+                state.registered().computeIfAbsent(split[0], o -> new TreeSet<>()).add(split[1]);
+            } else if (split.length == 3 && split[0].equals(RETIRED)) {
+                try {
+                    state.retired().put(split[1], Long.parseLong(split[2]));
+                } catch (final NumberFormatException ex) {
+                    throw new IOException("Malformed line '" + line + "' in " + this.file, ex);
+                }
+            } else {
+                throw new IOException("Malformed line '" + line + "' in " + this.file);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Registry contents.
+     *
+     * @param registered fingerprints by owner
+     * @param retired    when each retired fingerprint was replaced
+     */
+    private record State(Map<String, Set<String>> registered, Map<String, Long> retired) {}
+}
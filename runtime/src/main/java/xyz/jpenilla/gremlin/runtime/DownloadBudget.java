@@ -0,0 +1,302 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Process-wide limits on downloads, shared by every {@link DependencyResolver} in the JVM.
+ *
+ * <p>The budget is shared even with copies of gremlin loaded by other class loaders (i.e.
+ * shaded into other plugins), as its state is {@link JvmWideState JVM-wide state} using only
+ * JDK types. When multiple resolvers are waiting for a transfer slot, slots are divided
+ * fairly between them regardless of how many threads each uses.</p>
+ *
+ * <p>By default there are no limits. They can be set with {@link #configure(long, int)}, or
+ * the {@value #MAX_BYTES_PER_SECOND_PROPERTY} and {@value #MAX_CONCURRENT_TRANSFERS_PROPERTY}
+ * system properties.</p>
+ */
+@NullMarked
+public final class DownloadBudget {
+    public static final String MAX_BYTES_PER_SECOND_PROPERTY = "gremlin.download.maxBytesPerSecond";
+    public static final String MAX_CONCURRENT_TRANSFERS_PROPERTY = "gremlin.download.maxConcurrentTransfers";
+    private static final String STATE_NAME = "downloadBudget.v1";
+    // Allow short bursts, so that small transfers aren't delayed by a few milliseconds each
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final String LOCK = "lock";
+    private static final String CHANGED = "changed";
+    private static final String MAX_TRANSFERS = "maxTransfers";
+    private static final String BYTES_PER_SECOND = "bytesPerSecond";
+    private static final String IN_FLIGHT = "inFlight";
+    private static final String OWNERS = "owners";
+    private static final String NEXT_FREE_NANOS = "nextFreeNanos";
+    private static final String TRANSFERS = "transfers";
+    private static final String QUEUED_TRANSFERS = "queuedTransfers";
+    private static final String QUEUEING_NANOS = "queueingNanos";
+    private static final String MAX_QUEUEING_NANOS = "maxQueueingNanos";
+
+    // Looked up once per copy, the MBean server is only needed to find the shared state
+    private static volatile @Nullable Map<String, Object> sharedState;
+    // Shortcut to the shared bandwidth limit, checked for every buffer received
+    private static volatile @Nullable AtomicLong bytesPerSecondLimit;
+
+    private DownloadBudget() {
+    }
+
+    /**
+     * Set the process-wide limits, replacing any previously configured limits.
+     *
+     * @param maxBytesPerSecond      max download bandwidth in bytes per second, or {@code 0} for no limit
+     * @param maxConcurrentTransfers max concurrent transfers, or {@code 0} for no limit
+     */
+    public static void configure(final long maxBytesPerSecond, final int maxConcurrentTransfers) {
+        if (maxBytesPerSecond < 0 || maxConcurrentTransfers < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        final Map<String, Object> state = state();
+        ((AtomicLong) state.get(BYTES_PER_SECOND)).set(maxBytesPerSecond);
+        final ReentrantLock lock = (ReentrantLock) state.get(LOCK);
+        lock.lock();
+        try {
+            ((AtomicInteger) state.get(MAX_TRANSFERS)).set(maxConcurrentTransfers);
+            ((Condition) state.get(CHANGED)).signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the queueing metrics accumulated by all resolvers in this JVM.
+     *
+     * @return metrics
+     */
+    public static Metrics metrics() {
+        final Map<String, Object> state = state();
+        return new Metrics(
+            ((AtomicLong) state.get(TRANSFERS)).get(),
+            ((AtomicLong) state.get(QUEUED_TRANSFERS)).get(),
+            Duration.ofNanos(((AtomicLong) state.get(QUEUEING_NANOS)).get()),
+            Duration.ofNanos(((AtomicLong) state.get(MAX_QUEUEING_NANOS)).get())
+        );
+    }
+
+    /**
+     * Wait for a transfer slot.
+     *
+     * @param owner token of the resolver the transfer is for, slots are divided fairly between owners;
+     *              must be a JDK type, so that it doesn't keep the resolver's class loader alive
+     * @return the time spent waiting, in nanoseconds
+     * @throws InterruptedException when interrupted while waiting
+     */
+    static long acquire(final Object owner) throws InterruptedException {
+        final Map<String, Object> state = state();
+        final ReentrantLock lock = (ReentrantLock) state.get(LOCK);
+        final Condition changed = (Condition) state.get(CHANGED);
+        final AtomicInteger maxTransfers = (AtomicInteger) state.get(MAX_TRANSFERS);
+        final AtomicInteger inFlight = (AtomicInteger) state.get(IN_FLIGHT);
+        @SuppressWarnings("unchecked") final Map<Object, int[]> owners = (Map<Object, int[]>) state.get(OWNERS);
+        final long start = System.nanoTime();
+        boolean queued = false;
+        lock.lockInterruptibly();
+        try {
+            // [in flight, waiting]
+            final int[] counts = owners.computeIfAbsent(owner, $ -> new int[2]);
+            counts[1]++;
+            try {
+                while (!mayStart(maxTransfers.get(), inFlight.get(), counts, owners)) {
+                    queued = true;
+                    changed.await();
+                }
+            } finally {
+                counts[1]--;
+            }
+            counts[0]++;
+            inFlight.incrementAndGet();
+        } catch (final InterruptedException ex) {
+            removeIfIdle(owners, owner);
+            throw ex;
+        } finally {
+            lock.unlock();
+        }
+        final long waited = System.nanoTime() - start;
+        ((AtomicLong) state.get(TRANSFERS)).incrementAndGet();
+        if (queued) {
+            ((AtomicLong) state.get(QUEUED_TRANSFERS)).incrementAndGet();
+            ((AtomicLong) state.get(QUEUEING_NANOS)).addAndGet(waited);
+            ((AtomicLong) state.get(MAX_QUEUEING_NANOS)).accumulateAndGet(waited, Math::max);
+        }
+        return queued ? waited : 0;
+    }
+
+    /**
+     * Take a transfer slot if one is available without waiting.
+     *
+     * @param owner token of the resolver the transfer is for, see {@link #acquire(Object)}
+     * @return whether a slot was taken
+     */
+    static boolean tryAcquire(final Object owner) {
+        final Map<String, Object> state = state();
+        final ReentrantLock lock = (ReentrantLock) state.get(LOCK);
+        final AtomicInteger inFlight = (AtomicInteger) state.get(IN_FLIGHT);
+        @SuppressWarnings("unchecked") final Map<Object, int[]> owners = (Map<Object, int[]>) state.get(OWNERS);
+        lock.lock();
+        try {
+            final int[] counts = owners.computeIfAbsent(owner, $ -> new int[2]);
+            if (!mayStart(((AtomicInteger) state.get(MAX_TRANSFERS)).get(), inFlight.get(), counts, owners)) {
+                removeIfIdle(owners, owner);
+                return false;
+            }
+            counts[0]++;
+            inFlight.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        ((AtomicLong) state.get(TRANSFERS)).incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Release a transfer slot acquired with {@link #acquire(Object)} or {@link #tryAcquire(Object)}.
+     *
+     * @param owner owner
+     */
+    static void release(final Object owner) {
+        final Map<String, Object> state = state();
+        final ReentrantLock lock = (ReentrantLock) state.get(LOCK);
+        @SuppressWarnings("unchecked") final Map<Object, int[]> owners = (Map<Object, int[]>) state.get(OWNERS);
+        lock.lock();
+        try {
+            final int @Nullable [] counts = owners.get(owner);
+            if (counts != null) {
+                counts[0]--;
+            }
+            removeIfIdle(owners, owner);
+            ((AtomicInteger) state.get(IN_FLIGHT)).decrementAndGet();
+            ((Condition) state.get(CHANGED)).signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Account for {@code bytes} received, returning how long to wait before receiving more to
+     * stay within the bandwidth limit.
+     *
+     * @param bytes bytes received
+     * @return delay in nanoseconds
+     */
+    static long throttle(final long bytes) {
+        @Nullable AtomicLong limit = bytesPerSecondLimit;
+        if (limit == null) {
+            limit = (AtomicLong) state().get(BYTES_PER_SECOND);
+            bytesPerSecondLimit = limit;
+        }
+        final long bytesPerSecond = limit.get();
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return 0;
+        }
+        final AtomicLong nextFree = (AtomicLong) state().get(NEXT_FREE_NANOS);
+        final long cost = (long) (bytes * (1_000_000_000.0 / bytesPerSecond));
+        while (true) {
+            final long now = System.nanoTime();
+            final long previous = nextFree.get();
+            final long next = Math.max(previous, now - BURST_NANOS) + cost;
+            if (nextFree.compareAndSet(previous, next)) {
+                return Math.max(0, next - now);
+            }
+        }
+    }
+
+    private static boolean mayStart(final int maxTransfers, final int inFlight, final int[] counts, final Map<Object, int[]> owners) {
+        if (maxTransfers <= 0) {
+            return true;
+        }
+        if (inFlight >= maxTransfers) {
+            return false;
+        }
+        // Max-min fairness: an owner at its share of the slots must let other waiting owners go first
+        final int fairShare = Math.max(1, (maxTransfers + owners.size() - 1) / owners.size());
+        if (counts[0] < fairShare) {
+            return true;
+        }
+        for (final int[] other : owners.values()) {
+            if (other != counts && other[1] > 0 && other[0] < fairShare) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void removeIfIdle(final Map<Object, int[]> owners, final Object owner) {
+        final int @Nullable [] counts = owners.get(owner);
+        if (counts != null && counts[0] <= 0 && counts[1] <= 0) {
+            owners.remove(owner);
+        }
+    }
+
+    private static Map<String, Object> state() {
+        final @Nullable Map<String, Object> cached = sharedState;
+        if (cached != null) {
+            return cached;
+        }
+        final Map<String, Object> state = JvmWideState.get(STATE_NAME);
+        if (state.containsKey(LOCK)) {
+            sharedState = state;
+            return state;
+        }
+        synchronized (state) {
+            if (!state.containsKey(LOCK)) {
+                final ReentrantLock lock = new ReentrantLock(true);
+                state.put(CHANGED, lock.newCondition());
+                state.put(MAX_TRANSFERS, new AtomicInteger(Integer.getInteger(MAX_CONCURRENT_TRANSFERS_PROPERTY, 0)));
+                state.put(BYTES_PER_SECOND, new AtomicLong(Long.getLong(MAX_BYTES_PER_SECOND_PROPERTY, 0L)));
+                state.put(IN_FLIGHT, new AtomicInteger());
+                state.put(OWNERS, new HashMap<Object, int[]>());
+                state.put(NEXT_FREE_NANOS, new AtomicLong(System.nanoTime()));
+                state.put(TRANSFERS, new AtomicLong());
+                state.put(QUEUED_TRANSFERS, new AtomicLong());
+                state.put(QUEUEING_NANOS, new AtomicLong());
+                state.put(MAX_QUEUEING_NANOS, new AtomicLong());
+                // Published last, as the other copies only check for the lock
+                state.put(LOCK, lock);
+            }
+        }
+        sharedState = state;
+        return state;
+    }
+
+    /**
+     * Queueing metrics for downloads.
+     *
+     * @param transfers          total transfers started
+     * @param queuedTransfers    transfers that had to wait for a slot
+     * @param totalQueueingDelay total time spent waiting for slots
+     * @param maxQueueingDelay   longest time a single transfer waited for a slot
+     */
+    public record Metrics(long transfers, long queuedTransfers, Duration totalQueueingDelay, Duration maxQueueingDelay) {}
+}
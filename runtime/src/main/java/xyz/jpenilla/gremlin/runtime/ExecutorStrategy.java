@@ -0,0 +1,189 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.logging.GremlinLogger;
+
+/**
+ * Determines which threads a {@link DependencyResolver} resolves dependencies on.
+ *
+ * <p>Whatever the strategy, the tasks of each {@code resolve} call run in their own scope: once resolution
+ * completes, fails, or times out, outstanding tasks are cancelled, and the call only returns after the
+ * tasks that were already running have exited.</p>
+ *
+ * @see DependencyResolver.Builder#executorStrategy(ExecutorStrategy)
+ */
+@NullMarked
+public final class ExecutorStrategy {
+    private static final @Nullable ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+    private static final AtomicInteger backgroundThreadNumber = new AtomicInteger(1);
+
+    private final String name;
+    private final boolean virtual;
+    private final ScopeFactory scopeFactory;
+
+    private ExecutorStrategy(final String name, final boolean virtual, final ScopeFactory scopeFactory) {
+        this.name = name;
+        this.virtual = virtual;
+        this.scopeFactory = scopeFactory;
+    }
+
+    /**
+     * Resolves dependencies on a pool of {@link DependencyResolver.Builder#maxConcurrency(int) maxConcurrency}
+     * platform threads, created for each {@code resolve} call and shut down when it returns.
+     *
+     * <p>This is the default strategy.</p>
+     *
+     * @return fixed thread pool strategy
+     */
+    public static ExecutorStrategy fixedThreadPool() {
+        return new ExecutorStrategy("fixedThreadPool", false, (logger, maxConcurrency) -> {
+            final ExecutorService pool = Executors.newFixedThreadPool(maxConcurrency, new ResolverThreadFactory(logger));
+            return new ResolutionScope(pool, pool, logger);
+        });
+    }
+
+    /**
+     * Resolves each dependency on its own virtual thread. No pool is created, and threads blocked waiting on
+     * repositories cost next to nothing, so {@link DependencyResolver.Builder#maxConcurrency(int) maxConcurrency}
+     * does not apply. Downloads are still limited per host and by the {@link DownloadBudget}, and jar processing
+     * by the number of available processors.
+     *
+     * @return virtual thread strategy
+     * @throws UnsupportedOperationException when running on Java 20 or older
+     * @see #virtualThreadsAvailable()
+     */
+    public static ExecutorStrategy virtualThreads() {
+        final @Nullable ThreadFactory factory = VIRTUAL_THREAD_FACTORY;
+        if (factory == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer (running " + Runtime.version() + ")");
+        }
+        return new ExecutorStrategy("virtualThreads", true, (logger, maxConcurrency) ->
+            new ResolutionScope(task -> factory.newThread(task).start(), null, logger));
+    }
+
+    /**
+     * Uses {@link #virtualThreads()} when running on Java 21 or newer, and {@link #fixedThreadPool()} otherwise.
+     *
+     * @return virtual thread strategy if available, otherwise fixed thread pool strategy
+     */
+    public static ExecutorStrategy virtualThreadsIfAvailable() {
+        return virtualThreadsAvailable() ? virtualThreads() : fixedThreadPool();
+    }
+
+    /**
+     * Resolves dependencies on the provided executor, which is not shut down by the resolver. The executor
+     * determines how many dependencies are resolved at once, so
+     * {@link DependencyResolver.Builder#maxConcurrency(int) maxConcurrency} does not apply.
+     *
+     * @param executor executor
+     * @return caller-provided executor strategy
+     */
+    public static ExecutorStrategy executor(final Executor executor) {
+        return new ExecutorStrategy("executor[" + executor + ']', false, (logger, maxConcurrency) ->
+            new ResolutionScope(executor, null, logger));
+    }
+
+    /**
+     * Checks whether the running JVM supports virtual threads.
+     *
+     * @return whether {@link #virtualThreads()} is available
+     */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    ResolutionScope open(final GremlinLogger logger, final int maxConcurrency) {
+        return this.scopeFactory.open(logger, maxConcurrency);
+    }
+
+    /**
+     * Create the (unstarted) thread coordinating a background resolution. This is a virtual thread when
+     * using virtual threads, and otherwise a dedicated daemon thread, so that the coordinator never occupies
+     * a slot of the executor its tasks are waiting for.
+     */
+    Thread newBackgroundThread(final GremlinLogger logger, final Runnable task) {
+        if (this.virtual) {
+            return Objects.requireNonNull(VIRTUAL_THREAD_FACTORY).newThread(task);
+        }
+        final Thread thr = new Thread(task, DependencyResolver.class.getSimpleName() + "-background-" + backgroundThreadNumber.getAndIncrement());
+        thr.setDaemon(true);
+        thr.setUncaughtExceptionHandler((thread, throwable) -> logger.warn("Uncaught exception on thread " + thread.getName(), throwable));
+        return thr;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorStrategy[" + this.name + ']';
+    }
+
+    private static @Nullable ThreadFactory virtualThreadFactory() {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        // Compiled against Java 17, so Thread.ofVirtual().name(...).factory() has to be called reflectively
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class)
+                .invoke(builder, DependencyResolver.class.getSimpleName() + "-virtual-", 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (final ReflectiveOperationException | ClassCastException ex) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ScopeFactory {
+        ResolutionScope open(GremlinLogger logger, int maxConcurrency);
+    }
+
+    private static final class ResolverThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolNumber = new AtomicInteger(1);
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+        private final GremlinLogger logger;
+
+        ResolverThreadFactory(final GremlinLogger logger) {
+            this.namePrefix = DependencyResolver.class.getSimpleName() + "-pool-" + poolNumber.getAndIncrement() + "-thread-";
+            this.logger = logger;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thr = new Thread(
+                null,
+                runnable,
+                this.namePrefix + this.threadNumber.getAndIncrement(),
+                0
+            );
+            thr.setDaemon(true);
+            thr.setPriority(Thread.NORM_PRIORITY);
+            thr.setUncaughtExceptionHandler((thread, throwable) -> this.logger.warn("Uncaught exception on thread " + thread.getName(), throwable));
+            return thr;
+        }
+    }
+}
@@ -27,4 +27,18 @@ public interface Extension<S> {
     List<Dependency> dependencies(S config);
 
     String processorName();
+
+    /**
+     * Get a stable string representation of {@code config}, used as part of
+     * {@link DependencySet#fingerprint()}.
+     *
+     * <p>The default implementation uses {@link Object#toString()}, which is suitable
+     * for records and other value types.</p>
+     *
+     * @param config config
+     * @return config fingerprint
+     */
+    default String configFingerprint(final S config) {
+        return config.toString();
+    }
 }
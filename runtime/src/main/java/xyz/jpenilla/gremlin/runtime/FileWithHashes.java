@@ -0,0 +1,34 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.nio.file.Path;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.HashResult;
+
+/**
+ * A file and its hashes. The SHA-1 hash is only present when it has already been computed,
+ * see {@link VerifiedHashIndex#sha1(FileWithHashes)}.
+ *
+ * @param path   file
+ * @param sha256 SHA-256 hash
+ * @param sha1   SHA-1 hash, if known
+ */
+@NullMarked
+record FileWithHashes(Path path, HashResult sha256, @Nullable HashResult sha1) {}
@@ -0,0 +1,261 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.HashingAlgorithm;
+import xyz.jpenilla.gremlin.runtime.util.MultiAlgorithmHasher;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * {@link HttpResponse.BodySubscriber} that writes the response body to a file while
+ * feeding it through the {@link HashingAlgorithm#SHA256} and {@link HashingAlgorithm#SHA1}
+ * digests, so that the downloaded file doesn't need to be read again to verify it.
+ *
+ * <p>When the expected size is known, the transfer is aborted as soon as more bytes are received
+ * than expected. The file is not preallocated, so that its size is always the number of bytes
+ * received, which is what a partial file left behind by a killed process is resumed from.</p>
+ *
+ * <p>A subscriber can also continue a partial file, in which case the digests must
+ * already have been fed the existing bytes. When resuming, the partial file is kept if
+ * the transfer fails so that it can be continued again later.</p>
+ */
+@NullMarked
+final class HashingFileSubscriber implements HttpResponse.BodySubscriber<FileWithHashes> {
+    private static final MultiAlgorithmHasher HASHER = new MultiAlgorithmHasher(HashingAlgorithm.SHA1, HashingAlgorithm.SHA256);
+
+    private final Path file;
+    private final long expectedSize;
+    private final long offset;
+    private final boolean keepPartial;
+    private final MultiAlgorithmHasher.Session hashes;
+    private final CompletableFuture<FileWithHashes> result = new CompletableFuture<>();
+    private Flow.@Nullable Subscription subscription;
+    private @Nullable FileChannel channel;
+    private long written;
+
+    /**
+     * Creates a new subscriber that writes starting at {@code offset}.
+     *
+     * @param file         output file
+     * @param expectedSize expected total file size, or {@code -1} if unknown
+     * @param offset       offset to start writing at, any bytes after it are discarded
+     * @param hashes       hashing session, already updated with the first {@code offset} bytes of {@code file}
+     * @param keepPartial  whether to keep the written bytes when the transfer fails with an error from the connection
+     */
+    HashingFileSubscriber(
+        final Path file,
+        final long expectedSize,
+        final long offset,
+        final MultiAlgorithmHasher.Session hashes,
+        final boolean keepPartial
+    ) {
+        this.file = file;
+        this.expectedSize = expectedSize;
+        this.offset = offset;
+        this.keepPartial = keepPartial;
+        this.hashes = hashes;
+        this.written = offset;
+    }
+
+    /**
+     * Creates a hashing session for the digests computed by this subscriber.
+     *
+     * @return new hashing session
+     */
+    static MultiAlgorithmHasher.Session newHashes() {
+        return HASHER.newSession();
+    }
+
+    /**
+     * Creates a {@link HttpResponse.BodySubscriber} that fails with {@code ex} without reading the body.
+     *
+     * @param ex  failure
+     * @param <T> body type
+     * @return body subscriber
+     */
+    static <T> HttpResponse.BodySubscriber<T> failed(final IOException ex) {
+        final CompletableFuture<T> result = CompletableFuture.failedFuture(ex);
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<T> getBody() {
+                return result;
+            }
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(final List<ByteBuffer> item) {
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        this.subscription = subscription;
+        try {
+            final FileChannel ch = FileChannel.open(
+                Util.mkParentDirs(this.file),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE
+            );
+            this.channel = ch;
+            ch.truncate(this.offset);
+            ch.position(this.offset);
+        } catch (final IOException ex) {
+            final @Nullable FileChannel ch = this.channel;
+            this.channel = null;
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (final IOException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+            }
+            subscription.cancel();
+            this.result.completeExceptionally(ex);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(final List<ByteBuffer> buffers) {
+        final @Nullable FileChannel ch = this.channel;
+        if (ch == null || this.result.isDone()) {
+            return;
+        }
+        long received = 0;
+        try {
+            for (final ByteBuffer buffer : buffers) {
+                received += buffer.remaining();
+                this.written += buffer.remaining();
+                if (this.expectedSize != -1 && this.written > this.expectedSize) {
+                    throw new IOException("Received more than the expected %d bytes for %s".formatted(this.expectedSize, this.file));
+                }
+                this.hashes.update(buffer);
+                while (buffer.hasRemaining()) {
+                    ch.write(buffer);
+                }
+            }
+        } catch (final IOException ex) {
+            this.fail(ex, true);
+            return;
+        }
+        final Flow.@Nullable Subscription sub = this.subscription;
+        if (sub != null) {
+            requestNext(sub, received);
+        }
+    }
+
+    /**
+     * Request the next item from {@code subscription}, after a delay if needed to stay within the
+     * {@link DownloadBudget} bandwidth limit.
+     *
+     * @param subscription subscription
+     * @param received     bytes received in the last item
+     */
+    static void requestNext(final Flow.Subscription subscription, final long received) {
+        final long delay = DownloadBudget.throttle(received);
+        if (delay > 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> subscription.request(1));
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        this.fail(throwable, !this.keepPartial);
+    }
+
+    @Override
+    public void onComplete() {
+        if (this.result.isDone()) {
+            return;
+        }
+        if (this.expectedSize != -1 && this.written != this.expectedSize) {
+            this.fail(new IOException("Expected %d bytes for %s, but only received %d".formatted(this.expectedSize, this.file, this.written)), !this.keepPartial);
+            return;
+        }
+        try {
+            this.closeChannel();
+        } catch (final IOException ex) {
+            this.fail(ex, true);
+            return;
+        }
+        final MultiAlgorithmHasher.HashesMap hashes = this.hashes.finish();
+        this.result.complete(new FileWithHashes(this.file, hashes.hash(HashingAlgorithm.SHA256), hashes.hash(HashingAlgorithm.SHA1)));
+    }
+
+    @Override
+    public CompletionStage<FileWithHashes> getBody() {
+        return this.result;
+    }
+
+    private void fail(final Throwable throwable, final boolean delete) {
+        if (this.result.isDone()) {
+            return;
+        }
+        final Flow.@Nullable Subscription sub = this.subscription;
+        if (sub != null) {
+            sub.cancel();
+        }
+        try {
+            this.closeChannel();
+            if (delete) {
+                Files.deleteIfExists(this.file);
+            }
+        } catch (final IOException ex) {
+            throwable.addSuppressed(ex);
+        }
+        this.result.completeExceptionally(throwable);
+    }
+
+    private void closeChannel() throws IOException {
+        final @Nullable FileChannel ch = this.channel;
+        this.channel = null;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+}
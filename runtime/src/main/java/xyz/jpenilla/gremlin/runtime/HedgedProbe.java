@@ -0,0 +1,160 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.UnaryOperator;
+import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.gremlin.runtime.logging.GremlinLogger;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Hedged existence probe for an artifact across multiple repositories.
+ *
+ * <p>A {@code HEAD} request is sent to the first candidate immediately, and another
+ * candidate is added every {@code hedgeDelay} (or as soon as an in-flight probe fails),
+ * until one responds with {@code 200}. The first success wins and all other in-flight
+ * probes are cancelled. Each probe starts at most one successor, whichever of its delay
+ * and its failure comes first.</p>
+ *
+ * <p>Each probe is bounded by the read timeout, and so is the wait for a winner, after
+ * which the repositories are tried in their configured order. Probes don't take a
+ * {@link HostConcurrencyLimiter} permit or a {@link DownloadBudget} slot: they are
+ * {@code HEAD} requests without a body, at most one per repository, and the download
+ * that follows takes both as usual.</p>
+ */
+@NullMarked
+final class HedgedProbe {
+    private final HttpClient client;
+    private final GremlinLogger logger;
+    private final List<URI> candidates;
+    private final Duration hedgeDelay;
+    private final Duration timeout;
+    private final UnaryOperator<HttpRequest.Builder> requestCustomizer;
+    private final CompletableFuture<Integer> winner = new CompletableFuture<>();
+    private final List<CompletableFuture<?>> inFlight = new CopyOnWriteArrayList<>();
+    // 1 once the probe at an index has started its successor
+    private final AtomicIntegerArray advanced;
+    private final AtomicInteger finished = new AtomicInteger();
+
+    private HedgedProbe(
+        final HttpClient client,
+        final GremlinLogger logger,
+        final List<URI> candidates,
+        final Duration hedgeDelay,
+        final Duration timeout,
+        final UnaryOperator<HttpRequest.Builder> requestCustomizer
+    ) {
+        this.client = client;
+        this.logger = logger;
+        this.candidates = candidates;
+        this.hedgeDelay = hedgeDelay;
+        this.timeout = timeout;
+        this.requestCustomizer = requestCustomizer;
+        this.advanced = new AtomicIntegerArray(candidates.size());
+    }
+
+    /**
+     * Probe {@code candidates} and return the index of the first one that has the artifact.
+     *
+     * @param client            http client
+     * @param logger            logger
+     * @param candidates        artifact URIs, in order of preference
+     * @param hedgeDelay        delay before probing the next candidate while earlier probes are outstanding
+     * @param timeout           timeout for each probe, and for the wait for a winner
+     * @param requestCustomizer customizer applied to each request builder
+     * @return index of the winning candidate, or {@code -1} if no candidate responded with {@code 200} in time
+     */
+    static int probe(
+        final HttpClient client,
+        final GremlinLogger logger,
+        final List<URI> candidates,
+        final Duration hedgeDelay,
+        final Duration timeout,
+        final UnaryOperator<HttpRequest.Builder> requestCustomizer
+    ) {
+        if (candidates.isEmpty()) {
+            return -1;
+        }
+        final HedgedProbe probe = new HedgedProbe(client, logger, candidates, hedgeDelay, timeout, requestCustomizer);
+        probe.launch(0);
+        try {
+            return probe.winner.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            logger.debug("No probe of " + candidates.get(0) + " or its alternatives succeeded within " + timeout);
+            return -1;
+        } catch (final InterruptedException | ExecutionException e) {
+            throw Util.rethrow(e);
+        } finally {
+            for (final CompletableFuture<?> future : probe.inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void launch(final int idx) {
+        if (this.winner.isDone() || idx >= this.candidates.size()) {
+            return;
+        }
+        final URI uri = this.candidates.get(idx);
+        this.logger.debug("Probing " + uri);
+        final HttpRequest request = this.requestCustomizer.apply(HttpRequest.newBuilder(uri))
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .timeout(this.timeout)
+            .build();
+        final CompletableFuture<HttpResponse<Void>> future = this.client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        this.inFlight.add(future);
+        future.whenComplete((response, throwable) -> {
+            if (throwable == null && response.statusCode() == 200) {
+                this.winner.complete(idx);
+                return;
+            }
+            this.logger.debug("Probe of " + uri + " failed: " + (throwable == null ? "response code " + response.statusCode() : throwable));
+            if (this.finished.incrementAndGet() == this.candidates.size()) {
+                this.winner.complete(-1);
+            } else {
+                this.advance(idx);
+            }
+        });
+        if (idx + 1 < this.candidates.size()) {
+            CompletableFuture.delayedExecutor(this.hedgeDelay.toNanos(), TimeUnit.NANOSECONDS)
+                .execute(() -> this.advance(idx));
+        }
+    }
+
+    /**
+     * Start the successor of the probe at {@code idx}, unless it was already started.
+     */
+    private void advance(final int idx) {
+        if (idx + 1 < this.candidates.size() && this.advanced.compareAndSet(idx, 0, 1)) {
+            this.launch(idx + 1);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Adaptive per-host limit on concurrent downloads.
+ *
+ * <p>Each host's limit grows additively while transfers succeed without their throughput
+ * collapsing, and shrinks multiplicatively when the host throttles ({@code 429}) or fails.
+ * {@code Retry-After} pauses all new requests to the host until it elapses.</p>
+ */
+@NullMarked
+final class HostConcurrencyLimiter {
+    static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+    // Transfers smaller than this are dominated by latency, so their throughput says nothing about congestion
+    private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 64 * 1024;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final int initialLimit;
+    private final int maxLimit;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    HostConcurrencyLimiter(final int initialLimit, final int maxLimit) {
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Wait for a permit to send a request to the host of {@code uri}.
+     *
+     * @param uri request uri
+     * @return permit, which must be released through one of its methods
+     */
+    Permit acquire(final URI uri) {
+        final Host host = this.host(uri);
+        try {
+            host.acquire();
+        } catch (final InterruptedException e) {
+            throw Util.rethrow(e);
+        }
+        return new Permit(host);
+    }
+
+    /**
+     * Get a permit to send a request to the host of {@code uri} if one is available without waiting.
+     *
+     * @param uri request uri
+     * @return permit, which must be released through one of its methods, or {@code null} if none is available
+     */
+    @Nullable Permit tryAcquire(final URI uri) {
+        final Host host = this.host(uri);
+        return host.tryAcquire() ? new Permit(host) : null;
+    }
+
+    private Host host(final URI uri) {
+        return this.hosts.computeIfAbsent(uri.getScheme() + "://" + uri.getAuthority(), $ -> new Host(this.initialLimit));
+    }
+
+    /**
+     * Parse the {@code Retry-After} header, in either its delay-seconds or HTTP-date form.
+     *
+     * @param headers response headers
+     * @return delay, capped at {@link #MAX_RETRY_AFTER}, or {@code null} if absent or invalid
+     */
+    static @Nullable Duration retryAfter(final HttpHeaders headers) {
+        final Optional<String> value = headers.firstValue("Retry-After");
+        if (value.isEmpty()) {
+            return null;
+        }
+        Duration delay;
+        try {
+            delay = Duration.ofSeconds(Long.parseLong(value.get().trim()));
+        } catch (final NumberFormatException ex) {
+            try {
+                delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.get().trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+            } catch (final DateTimeParseException ex2) {
+                return null;
+            }
+        }
+        if (delay.isNegative()) {
+            return Duration.ZERO;
+        }
+        return delay.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : delay;
+    }
+
+    final class Permit {
+        private final Host host;
+        private boolean released;
+
+        private Permit(final Host host) {
+            this.host = host;
+        }
+
+        /**
+         * Release after a completed transfer.
+         *
+         * @param bytes bytes transferred
+         * @param nanos transfer duration
+         */
+        void completed(final long bytes, final long nanos) {
+            if (this.release()) {
+                this.host.completed(bytes, nanos, HostConcurrencyLimiter.this.maxLimit);
+            }
+        }
+
+        /**
+         * Release after the host throttled the request.
+         *
+         * @param retryAfter requested delay, if any
+         */
+        void throttled(final @Nullable Duration retryAfter) {
+            if (this.release()) {
+                this.host.throttled(retryAfter);
+            }
+        }
+
+        /**
+         * Release after a failure attributable to the host, such as a timeout or {@code 5xx} response.
+         */
+        void failed() {
+            if (this.release()) {
+                this.host.failed();
+            }
+        }
+
+        /**
+         * Release without affecting the limit, for responses that say nothing about the host's capacity.
+         *
+         * @return whether the permit was released by this call
+         */
+        boolean release() {
+            if (this.released) {
+                return false;
+            }
+            this.released = true;
+            this.host.release();
+            return true;
+        }
+    }
+
+    private static final class Host {
+        private double limit;
+        private int inFlight;
+        private long pausedUntil;
+        private double throughput = -1;
+
+        Host(final int initialLimit) {
+            this.limit = initialLimit;
+        }
+
+        synchronized void acquire() throws InterruptedException {
+            while (true) {
+                final long paused = this.pausedUntil - System.nanoTime();
+                if (paused > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, paused);
+                } else if (this.inFlight < Math.max(1, (int) this.limit)) {
+                    this.inFlight++;
+                    return;
+                } else {
+                    this.wait();
+                }
+            }
+        }
+
+        synchronized boolean tryAcquire() {
+            if (this.pausedUntil - System.nanoTime() > 0 || this.inFlight >= Math.max(1, (int) this.limit)) {
+                return false;
+            }
+            this.inFlight++;
+            return true;
+        }
+
+        synchronized void release() {
+            this.inFlight--;
+            this.notifyAll();
+        }
+
+        synchronized void completed(final long bytes, final long nanos, final int maxLimit) {
+            if (bytes >= MIN_THROUGHPUT_SAMPLE_BYTES && nanos > 0) {
+                final double rate = (double) bytes / nanos;
+                if (this.throughput > 0 && rate < this.throughput / 2 && this.limit > 1) {
+                    // Adding connections stopped paying off, back off a little
+                    this.limit = Math.max(1, this.limit * 0.75);
+                    this.throughput = EWMA_WEIGHT * rate + (1 - EWMA_WEIGHT) * this.throughput;
+                    return;
+                }
+                this.throughput = this.throughput < 0 ? rate : EWMA_WEIGHT * rate + (1 - EWMA_WEIGHT) * this.throughput;
+            }
+            this.limit = Math.min(maxLimit, this.limit + 1 / this.limit);
+            this.notifyAll();
+        }
+
+        synchronized void throttled(final @Nullable Duration retryAfter) {
+            this.limit = Math.max(1, this.limit / 2);
+            if (retryAfter != null) {
+                this.pausedUntil = Math.max(this.pausedUntil, System.nanoTime() + retryAfter.toNanos());
+            }
+        }
+
+        synchronized void failed() {
+            this.limit = Math.max(1, this.limit * 0.75);
+        }
+    }
+}
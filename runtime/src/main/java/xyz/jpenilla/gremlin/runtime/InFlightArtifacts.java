@@ -0,0 +1,132 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Deduplicates concurrent resolutions of the same artifact (keyed by its expected SHA-256 hash) or
+ * processed jar (keyed by its file name, which includes the processing cache key) across caches. The
+ * first resolution claims the key, and the others wait for it and then link or copy the file it
+ * published instead of downloading or processing it again.
+ *
+ * <p>Completed entries are kept as long as their files exist, so that later resolutions (for example after
+ * a plugin reload) find them as well. The map only holds JDK types, so that it can be shared with copies
+ * of gremlin loaded by other class loaders, see {@link SharedResolution}.</p>
+ */
+@NullMarked
+final class InFlightArtifacts {
+    private final ConcurrentMap<String, CompletableFuture<Path>> artifacts;
+
+    InFlightArtifacts() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    InFlightArtifacts(final ConcurrentMap<String, CompletableFuture<Path>> artifacts) {
+        this.artifacts = artifacts;
+    }
+
+    static String artifactKey(final Dependency dependency) {
+        return "artifact:" + dependency.sha256().toLowerCase(Locale.ROOT);
+    }
+
+    static String processedKey(final String fileName) {
+        return "processed:" + fileName;
+    }
+
+    /**
+     * Claim {@code key}, waiting for any resolution of it that is already in progress.
+     *
+     * <p>Must be called before acquiring any {@link ArtifactLocks artifact lock}, as the owner of an
+     * in-progress resolution may be waiting for the same lock.</p>
+     *
+     * @param key key, see {@link #artifactKey(Dependency)} and {@link #processedKey(String)}
+     * @return claim, which must be {@link Claim#release() released}
+     * @throws InterruptedException when interrupted while waiting
+     */
+    Claim claim(final String key) throws InterruptedException {
+        while (true) {
+            final CompletableFuture<Path> claim = new CompletableFuture<>();
+            final @Nullable CompletableFuture<Path> existing = this.artifacts.putIfAbsent(key, claim);
+            if (existing == null) {
+                return new Claim(key, claim, null);
+            }
+            try {
+                final Path file = existing.get();
+                if (Files.isRegularFile(file)) {
+                    return new Claim(key, null, file);
+                }
+            } catch (final ExecutionException ex) {
+                // The other resolution failed, try ourselves
+            }
+            this.artifacts.remove(key, existing);
+        }
+    }
+
+    final class Claim {
+        private final String key;
+        private final @Nullable CompletableFuture<Path> owned;
+        private final @Nullable Path resolved;
+
+        private Claim(final String key, final @Nullable CompletableFuture<Path> owned, final @Nullable Path resolved) {
+            this.key = key;
+            this.owned = owned;
+            this.resolved = resolved;
+        }
+
+        /**
+         * The file published by another resolution of the same key, if this claim waited for one.
+         * Artifacts still have to be verified before use.
+         *
+         * @return resolved file
+         */
+        @Nullable Path resolved() {
+            return this.resolved;
+        }
+
+        /**
+         * Publish the resolved file to resolutions waiting for this claim.
+         *
+         * @param file resolved file
+         */
+        void complete(final Path file) {
+            if (this.owned != null) {
+                this.owned.complete(file);
+            }
+        }
+
+        /**
+         * Release the claim. If it wasn't {@link #complete(Path) completed}, the next waiting resolution
+         * tries for itself.
+         */
+        void release() {
+            if (this.owned != null && !this.owned.isDone()) {
+                InFlightArtifacts.this.artifacts.remove(this.key, this.owned);
+                this.owned.completeExceptionally(new IllegalStateException("Resolution failed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.Descriptor;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.modelmbean.DescriptorSupport;
+import javax.management.modelmbean.ModelMBeanAttributeInfo;
+import javax.management.modelmbean.ModelMBeanInfoSupport;
+import javax.management.modelmbean.RequiredModelMBean;
+import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * JVM-wide state shared with copies of gremlin loaded by other class loaders (i.e. shaded into other plugins).
+ *
+ * <p>Each state map is published as the {@value #ATTRIBUTE} attribute of an MBean registered with the platform
+ * MBean server, which every class loader can reach. The MBean is a JDK {@link RequiredModelMBean} holding the map
+ * as its attribute's default value, so that no class of a particular copy is registered. For the same reason,
+ * state maps may only contain JDK types, and nothing in them may reference classes of a particular copy, which
+ * would keep its class loader alive.</p>
+ *
+ * <p>The attributes are only meant for in-process use; remote JMX clients can't read them, as their values are not
+ * serializable.</p>
+ */
+@NullMarked
+final class JvmWideState {
+    // Not derived from the package name, so that it isn't changed by relocation
+    private static final String DOMAIN = "gremlin";
+    private static final String ATTRIBUTE = "State";
+
+    private JvmWideState() {
+    }
+
+    /**
+     * Get the state map named {@code name}, creating it if this is the first copy to ask for it.
+     *
+     * @param name versioned name, which must be changed whenever the contents change incompatibly
+     * @return state map
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> get(final String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN, "state", name);
+            while (true) {
+                try {
+                    return (Map<String, Object>) server.getAttribute(objectName, ATTRIBUTE);
+                } catch (final InstanceNotFoundException ex) {
+                    // First to ask for it
+                }
+                final Map<String, Object> state = new ConcurrentHashMap<>();
+                try {
+                    server.registerMBean(holder(name, state), objectName);
+                    return state;
+                } catch (final InstanceAlreadyExistsException ex) {
+                    // Raced with another copy, use its state
+                }
+            }
+        } catch (final JMException ex) {
+            throw Util.rethrow(ex);
+        }
+    }
+
+    private static RequiredModelMBean holder(final String name, final Map<String, Object> state) throws JMException {
+        final Descriptor descriptor = new DescriptorSupport();
+        descriptor.setField("name", ATTRIBUTE);
+        descriptor.setField("descriptorType", "attribute");
+        descriptor.setField("default", state);
+        final ModelMBeanAttributeInfo attribute = new ModelMBeanAttributeInfo(
+            ATTRIBUTE,
+            Map.class.getName(),
+            "gremlin state " + name,
+            true,
+            false,
+            false,
+            descriptor
+        );
+        return new RequiredModelMBean(new ModelMBeanInfoSupport(
+            RequiredModelMBean.class.getName(),
+            "gremlin state " + name,
+            new ModelMBeanAttributeInfo[]{attribute},
+            null,
+            null,
+            null
+        ));
+    }
+}
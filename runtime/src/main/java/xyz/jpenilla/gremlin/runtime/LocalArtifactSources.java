@@ -0,0 +1,168 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link ArtifactSource} implementations backed by the local file system or class path.
+ */
+@NullMarked
+final class LocalArtifactSources {
+    private LocalArtifactSources() {
+    }
+
+    static Path mavenLocalRepository() {
+        final @Nullable String override = System.getProperty("maven.repo.local");
+        if (override != null && !override.isBlank()) {
+            return Path.of(override);
+        }
+        return Path.of(System.getProperty("user.home"), ".m2", "repository");
+    }
+
+    static Path gradleUserHome() {
+        @Nullable String override = System.getProperty("gradle.user.home");
+        if (override == null || override.isBlank()) {
+            override = System.getenv("GRADLE_USER_HOME");
+        }
+        if (override != null && !override.isBlank()) {
+            return Path.of(override);
+        }
+        return Path.of(System.getProperty("user.home"), ".gradle");
+    }
+
+    /**
+     * Hard link {@code source} to {@code destination}, or copy it when linking isn't possible (for example because
+     * they are on different file systems), letting the OS transfer the bytes directly where supported.
+     */
+    static void linkOrCopy(final Path source, final Path destination) throws IOException {
+        try {
+            Files.createLink(destination, source);
+            return;
+        } catch (final UnsupportedOperationException | IOException ex) {
+            // Fall back to copying
+        }
+        try (
+            final FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            final FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+        ) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    record MavenLayout(Path repository) implements ArtifactSource {
+        @Override
+        public boolean provide(final Dependency dependency, final String artifactPath, final Path destination) throws IOException {
+            final Path file = this.repository.resolve(artifactPath);
+            if (!Files.isRegularFile(file)) {
+                return false;
+            }
+            linkOrCopy(file, destination);
+            return true;
+        }
+    }
+
+    /**
+     * A file resolved for the same artifact by another resolution in this JVM, see {@link InFlightArtifacts}.
+     */
+    record ResolvedFile(Path file) implements ArtifactSource {
+        @Override
+        public boolean provide(final Dependency dependency, final String artifactPath, final Path destination) throws IOException {
+            if (!Files.isRegularFile(this.file)) {
+                return false;
+            }
+            linkOrCopy(this.file, destination);
+            return true;
+        }
+    }
+
+    record ClasspathResources(ClassLoader loader, String path) implements ArtifactSource {
+        @Override
+        public boolean provide(final Dependency dependency, final String artifactPath, final Path destination) throws IOException {
+            try (final @Nullable InputStream stream = this.loader.getResourceAsStream(this.path + artifactPath)) {
+                if (stream == null) {
+                    return false;
+                }
+                Files.copy(stream, destination);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gradle stores artifacts as {@code group/name/version/<sha1>/file}. The SHA-1 isn't known up front, so
+     * there may be multiple candidates (for example a republished version). {@link #provide} uses the first
+     * with the expected size, while the resolver tries each such candidate in turn, verifying them like any
+     * other source.
+     */
+    record GradleModuleCache(Path filesDirectory) implements ArtifactSource {
+        @Override
+        public boolean provide(final Dependency dependency, final String artifactPath, final Path destination) throws IOException {
+            final List<Path> candidates = this.candidates(dependency, artifactPath);
+            if (candidates.isEmpty()) {
+                return false;
+            }
+            linkOrCopy(candidates.get(0), destination);
+            return true;
+        }
+
+        /**
+         * List the files in the cache for {@code dependency} that have the expected size.
+         *
+         * @param dependency   dependency
+         * @param artifactPath path of the artifact in the standard Maven repository layout
+         * @return candidate files
+         * @throws IOException on I/O error
+         */
+        List<Path> candidates(final Dependency dependency, final String artifactPath) throws IOException {
+            final String[] segments = artifactPath.split("/");
+            final Path versionDirectory = this.filesDirectory
+                .resolve(dependency.group())
+                .resolve(dependency.name())
+                .resolve(segments[segments.length - 2]);
+            if (!Files.isDirectory(versionDirectory)) {
+                return List.of();
+            }
+            final String fileName = segments[segments.length - 1];
+            final List<Path> candidates = new ArrayList<>();
+            try (final Stream<Path> s = Files.list(versionDirectory)) {
+                for (final Path dir : s.toList()) {
+                    final Path file = dir.resolve(fileName);
+                    if (Files.isRegularFile(file) && (dependency.size() == -1 || Files.size(file) == dependency.size())) {
+                        candidates.add(file);
+                    }
+                }
+            }
+            return candidates;
+        }
+    }
+}
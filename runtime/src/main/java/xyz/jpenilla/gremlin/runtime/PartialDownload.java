@@ -0,0 +1,397 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.MultiAlgorithmHasher;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * A download into a {@code .part} file next to the final output file, which is kept
+ * when the transfer is interrupted so that a later attempt can continue it with a
+ * {@code Range} request instead of starting over.
+ *
+ * <p>The validators ({@code ETag} and {@code Last-Modified}) of the response that started
+ * the partial file are recorded in a {@code .part.meta} file and sent back as {@code If-Range},
+ * so that the server sends the whole file again if it changed in the meantime. The final
+ * hash check is what guarantees integrity either way.</p>
+ *
+ * <p>A {@link ChunkedDownload} writes ranges out of order into a preallocated file, so the size
+ * of its partial file says nothing about what was received. It records the length of the
+ * completed prefix in the {@code .part.meta} file instead, and only that prefix is resumed.</p>
+ */
+@NullMarked
+final class PartialDownload {
+    static final String PART_EXTENSION = ".part";
+    static final String META_EXTENSION = ".part.meta";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    private static final String NONE = "-";
+
+    private final Path file;
+    private final Path metaFile;
+    private final long expectedSize;
+    private long offset;
+    private MultiAlgorithmHasher.@Nullable Session existingHashes;
+    private @Nullable ChunkedDownload chunked;
+    private volatile ChunkedDownload.@Nullable Subscriber activeChunked;
+    private boolean chunkingUnsupported;
+    private volatile boolean resumed;
+
+    /**
+     * Creates a new partial download.
+     *
+     * @param outputFile   final location
+     * @param expectedSize expected file size, or {@code -1} if unknown
+     */
+    PartialDownload(final Path outputFile, final long expectedSize) {
+        this.expectedSize = expectedSize;
+        this.file = outputFile.resolveSibling(outputFile.getFileName().toString() + PART_EXTENSION);
+        this.metaFile = outputFile.resolveSibling(outputFile.getFileName().toString() + META_EXTENSION);
+    }
+
+    Path file() {
+        return this.file;
+    }
+
+    /**
+     * Whether the last response continued the existing partial file.
+     *
+     * @return whether the download was resumed
+     */
+    boolean resumed() {
+        return this.resumed;
+    }
+
+    /**
+     * Prepare a request for {@code uri}. When a partial file exists, its bytes are hashed to
+     * rebuild the digest state and {@code Range} (and {@code If-Range}, when the validators were
+     * recorded for the same URI) headers are added. Otherwise, when {@code chunked} is not
+     * {@code null}, only the first chunk is requested, and the rest is fetched by the
+     * {@link ChunkedDownload} if the file turns out to be larger. When the expected size is
+     * known to fit in a single chunk, the whole file is requested directly instead.
+     *
+     * @param uri     uri
+     * @param builder request builder
+     * @param chunked chunked download configuration, or {@code null} to download over a single connection
+     * @return request builder
+     * @throws IOException on I/O error
+     */
+    HttpRequest.Builder prepare(final URI uri, final HttpRequest.Builder builder, final @Nullable ChunkedDownload chunked) throws IOException {
+        this.resumed = false;
+        this.offset = 0;
+        this.existingHashes = null;
+        this.chunked = null;
+        this.activeChunked = null;
+        long size;
+        try {
+            size = Files.size(this.file);
+        } catch (final NoSuchFileException ex) {
+            size = 0;
+        }
+        final long prefix = this.recordedPrefix();
+        if (prefix != -1 && prefix < size) {
+            // Left behind by a chunked download; only the recorded prefix is known to be complete
+            try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+                channel.truncate(prefix);
+            }
+            size = prefix;
+        }
+        if (this.expectedSize != -1 && size >= this.expectedSize) {
+            // Can't be a prefix of the artifact
+            this.discard();
+            size = 0;
+        }
+        if (size == 0) {
+            if (chunked != null && !this.chunkingUnsupported && (this.expectedSize == -1 || this.expectedSize > chunked.chunkSize())) {
+                this.chunked = chunked;
+                builder.header("Range", "bytes=0-" + (chunked.chunkSize() - 1));
+            }
+            return builder;
+        }
+
+        final MultiAlgorithmHasher.Session hashes = HashingFileSubscriber.newHashes();
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                hashes.update(buffer);
+                buffer.clear();
+            }
+        }
+        this.offset = size;
+        this.existingHashes = hashes;
+
+        builder.header("Range", "bytes=" + size + '-');
+        final @Nullable String validator = this.validator(uri);
+        if (validator != null) {
+            builder.header("If-Range", validator);
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a body handler that continues the partial file on a matching {@code 206} response,
+     * starts over on a {@code 200} response, and discards the body of any other response. When
+     * only the first chunk was requested, the {@code 206} response instead starts a
+     * {@link ChunkedDownload}, unless it already contains the whole file. Responses for a file of
+     * a different size than expected are failed before reading the body.
+     *
+     * @param uri uri
+     * @return body handler
+     */
+    HttpResponse.BodyHandler<@Nullable FileWithHashes> handler(final URI uri) {
+        return responseInfo -> {
+            final MultiAlgorithmHasher.@Nullable Session hashes = this.existingHashes;
+            final @Nullable ChunkedDownload chunked = this.chunked;
+            if (responseInfo.statusCode() == 206 && (hashes != null || chunked != null)) {
+                final @Nullable Matcher range = responseInfo.headers().firstValue("Content-Range")
+                    .map(CONTENT_RANGE::matcher)
+                    .filter(Matcher::matches)
+                    .orElse(null);
+                if (range == null || Long.parseLong(range.group(1)) != this.offset) {
+                    return HashingFileSubscriber.failed(new UnusableResponseException("Unexpected Content-Range for " + uri));
+                }
+                final long total = Long.parseLong(range.group(3));
+                if (this.expectedSize != -1 && total != this.expectedSize) {
+                    return HashingFileSubscriber.failed(this.sizeMismatch(uri, total));
+                }
+                if (hashes != null) {
+                    this.resumed = true;
+                    // Continued in order from here on, so its size is what was received
+                    this.recordPrefix(-1);
+                    return new HashingFileSubscriber(this.file, total, this.offset, hashes, true);
+                }
+                try {
+                    this.writeMeta(uri, responseInfo.headers(), 0);
+                } catch (final IOException ex) {
+                    // Without a recorded prefix, a partial file left behind would be taken as complete up to its size
+                    return HashingFileSubscriber.failed(ex);
+                }
+                final long firstLength = Long.parseLong(range.group(2)) + 1;
+                if (firstLength >= total) {
+                    return new HashingFileSubscriber(this.file, total, 0, HashingFileSubscriber.newHashes(), true);
+                }
+                final ChunkedDownload.Subscriber subscriber = Objects.requireNonNull(chunked)
+                    .subscriber(uri, this.file, firstLength, total, ifRange(responseInfo.headers()), this::recordPrefix);
+                this.activeChunked = subscriber;
+                return subscriber;
+            }
+            if (responseInfo.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            try {
+                this.writeMeta(uri, responseInfo.headers(), -1);
+            } catch (final IOException ignore) {
+                // Without validators the partial file can still be resumed, relying on the hash check
+            }
+            final OptionalLong contentLength = responseInfo.headers().firstValueAsLong("Content-Length");
+            if (this.expectedSize != -1 && contentLength.isPresent() && contentLength.getAsLong() != this.expectedSize) {
+                return HashingFileSubscriber.failed(this.sizeMismatch(uri, contentLength.getAsLong()));
+            }
+            final long size = this.expectedSize != -1 ? this.expectedSize : contentLength.orElse(-1);
+            return new HashingFileSubscriber(this.file, size, 0, HashingFileSubscriber.newHashes(), true);
+        };
+    }
+
+    /**
+     * Move the completed file to {@code outputFile}.
+     *
+     * @param downloaded completed download
+     * @param outputFile final location
+     * @return the published file
+     * @throws IOException on I/O error
+     */
+    FileWithHashes publish(final FileWithHashes downloaded, final Path outputFile) throws IOException {
+        Files.move(this.file, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(this.metaFile);
+        return new FileWithHashes(outputFile, downloaded.sha256(), downloaded.sha1());
+    }
+
+    /**
+     * Stop the chunked download started by the last response, if any. Once this returns, none of
+     * its ranges write to the partial file anymore.
+     */
+    void abort() {
+        final ChunkedDownload.@Nullable Subscriber subscriber = this.activeChunked;
+        if (subscriber != null) {
+            subscriber.cancel();
+        }
+    }
+
+    /**
+     * Handle a {@code 416} response: discard the partial file and don't request ranges
+     * again from this download.
+     *
+     * @throws IOException on I/O error
+     */
+    void rangeNotSatisfiable() throws IOException {
+        this.chunkingUnsupported = true;
+        this.discard();
+    }
+
+    /**
+     * Delete the partial file so the next attempt starts over.
+     *
+     * @throws IOException on I/O error
+     */
+    void discard() throws IOException {
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.metaFile);
+        this.offset = 0;
+        this.existingHashes = null;
+    }
+
+    private UnusableResponseException sizeMismatch(final URI uri, final long size) {
+        return new UnusableResponseException("Size of %s (%d) does not match expected size %d".formatted(uri, size, this.expectedSize));
+    }
+
+    private @Nullable String validator(final URI uri) {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(this.metaFile);
+        } catch (final IOException ex) {
+            return null;
+        }
+        if (lines.size() < 3 || !lines.get(0).equals(uri.toString())) {
+            return null;
+        }
+        return ifRange(lines.get(1).equals(NONE) ? null : lines.get(1), lines.get(2).equals(NONE) ? null : lines.get(2));
+    }
+
+    private static @Nullable String ifRange(final HttpHeaders headers) {
+        return ifRange(headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null));
+    }
+
+    private static @Nullable String ifRange(final @Nullable String etag, final @Nullable String lastModified) {
+        // Weak validators can't be used with If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Get the length of the completed prefix recorded by a chunked download.
+     *
+     * @return prefix length, or {@code -1} if none is recorded
+     */
+    private long recordedPrefix() {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(this.metaFile);
+        } catch (final IOException ex) {
+            return -1;
+        }
+        if (lines.size() != 4) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lines.get(3));
+        } catch (final NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Record that the first {@code prefix} bytes of the partial file are complete.
+     *
+     * @param prefix completed prefix length, or {@code -1} to stop tracking it
+     */
+    private void recordPrefix(final long prefix) {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(this.metaFile);
+        } catch (final IOException ex) {
+            return;
+        }
+        if (lines.size() != 4) {
+            return;
+        }
+        if (prefix == -1) {
+            lines.remove(3);
+        } else {
+            lines.set(3, String.valueOf(prefix));
+        }
+        try {
+            this.replaceMeta(lines);
+        } catch (final IOException ignore) {
+            // The previously recorded prefix is still complete
+        }
+    }
+
+    /**
+     * Write the {@code .part.meta} file for a response starting a new partial file.
+     *
+     * @param uri     uri
+     * @param headers response headers
+     * @param prefix  completed prefix length for a chunked download, or {@code -1} when the file is written in order
+     */
+    private void writeMeta(final URI uri, final HttpHeaders headers, final long prefix) throws IOException {
+        final Optional<String> etag = headers.firstValue("ETag");
+        final Optional<String> lastModified = headers.firstValue("Last-Modified");
+        if (etag.isEmpty() && lastModified.isEmpty() && prefix == -1) {
+            Files.deleteIfExists(this.metaFile);
+            return;
+        }
+        final List<String> lines = new ArrayList<>(List.of(uri.toString(), etag.orElse(NONE), lastModified.orElse(NONE)));
+        if (prefix != -1) {
+            lines.add(String.valueOf(prefix));
+        }
+        this.replaceMeta(lines);
+    }
+
+    private void replaceMeta(final List<String> lines) throws IOException {
+        final Path tmp = this.metaFile.resolveSibling(this.metaFile.getFileName().toString() + ".tmp");
+        Files.write(Util.mkParentDirs(tmp), lines);
+        Files.move(tmp, this.metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A response that can't be for the expected artifact, or can't continue the partial file. Retrying the same
+     * repository won't help; the partial file should be discarded and the next repository tried instead.
+     */
+    static final class UnusableResponseException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        UnusableResponseException(final String message) {
+            super(message);
+        }
+    }
+}
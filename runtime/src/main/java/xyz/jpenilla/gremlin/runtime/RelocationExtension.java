@@ -32,7 +32,7 @@ public final class RelocationExtension implements Extension<RelocationExtension.
         for (final String line : lines) {
             if (line.startsWith("dep ")) {
                 final String[] split = line.split(" ");
-                deps.add(Dependency.parse(split[1], split[2]));
+                deps.add(Dependency.parse(split[1], split[2], split.length > 3 ? Long.parseLong(split[3]) : -1));
             } else {
                 reloc.add(line);
             }
@@ -0,0 +1,267 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Tracks latency, error rate, and timeouts per repository, both during a run and across runs.
+ *
+ * <p>After {@link #FAILURE_THRESHOLD} consecutive failures the circuit for a repository opens and it
+ * is skipped until the cooldown elapses, after which it gets another chance (half-open). The cooldown
+ * doubles each time the circuit re-opens, up to {@link #MAX_COOLDOWN}. Healthy repositories are ranked
+ * by their measured time to first byte. Only responses with the artifact are measured, as a repository
+ * can answer quickly that it doesn't have one.</p>
+ */
+@NullMarked
+final class RepositoryHealth {
+    private static final String FILE_NAME = "repository-health.txt";
+    static final int FAILURE_THRESHOLD = 3;
+    static final Duration BASE_COOLDOWN = Duration.ofSeconds(30);
+    static final Duration MAX_COOLDOWN = Duration.ofMinutes(10);
+    private static final double EWMA_WEIGHT = 0.3;
+    // Latencies within the same bucket are considered equal, so that noise doesn't reorder repositories
+    private static final long LATENCY_BUCKET_MILLIS = 50;
+
+    private final Path file;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private volatile boolean loaded = false;
+
+    RepositoryHealth(final Path metadataDirectory) {
+        this.file = metadataDirectory.resolve(FILE_NAME);
+    }
+
+    /**
+     * Rank {@code repositories}: repositories with an open circuit are removed (unless every
+     * repository has an open circuit, in which case the input order is kept), and the rest are
+     * stably sorted by measured latency, adjusted for error rate. Repositories without measurements
+     * are ranked like the median of the measured ones, so that they keep their configured position
+     * relative to them until they have been measured.
+     *
+     * @param repositories repositories in order of preference
+     * @return ranked repositories
+     */
+    List<String> rank(final List<String> repositories) {
+        this.load();
+        final long now = System.currentTimeMillis();
+        final List<String> available = new ArrayList<>(repositories.size());
+        for (final String repository : repositories) {
+            if (this.stats(repository).available(now)) {
+                available.add(repository);
+            }
+        }
+        if (available.isEmpty()) {
+            return repositories;
+        }
+        final Map<String, Long> keys = new HashMap<>();
+        final List<Long> measured = new ArrayList<>();
+        for (final String repository : available) {
+            final long key = this.stats(repository).rankKey();
+            keys.put(repository, key);
+            if (key != -1) {
+                measured.add(key);
+            }
+        }
+        if (measured.isEmpty()) {
+            return available;
+        }
+        measured.sort(null);
+        final long median = measured.get(measured.size() / 2);
+        available.sort(Comparator.comparingLong(repository -> {
+            final long key = keys.get(repository);
+            return key == -1 ? median : key;
+        }));
+        return available;
+    }
+
+    void recordSuccess(final String repository, final long latencyMillis) {
+        this.stats(repository).success(latencyMillis);
+        this.dirty.set(true);
+    }
+
+    /**
+     * Record that {@code repository} answered without the artifact. This closes its circuit,
+     * but isn't used as a latency measurement.
+     *
+     * @param repository repository
+     */
+    void recordReachable(final String repository) {
+        this.stats(repository).reachable();
+        this.dirty.set(true);
+    }
+
+    void recordFailure(final String repository, final boolean timeout) {
+        this.stats(repository).failure(timeout, System.currentTimeMillis());
+        this.dirty.set(true);
+    }
+
+    synchronized void save() {
+        if (!this.dirty.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            final Path tmp = Files.createTempFile(Util.mkParentDirs(this.file).getParent(), FILE_NAME, ".tmp");
+            try (final BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                writer.write("# repository\tlatencyMillis\tsuccesses\tfailures\ttimeouts\tconsecutiveFailures\topenCount\topenUntil");
+                writer.newLine();
+                for (final Map.Entry<String, Stats> e : this.stats.entrySet()) {
+                    writer.write(e.getKey() + '\t' + e.getValue().serialize());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            this.dirty.set(true);
+            throw Util.rethrow(ex);
+        }
+    }
+
+    private Stats stats(final String repository) {
+        this.load();
+        return this.stats.computeIfAbsent(repository, $ -> new Stats());
+    }
+
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (this.loaded) {
+                return;
+            }
+            if (Files.isRegularFile(this.file)) {
+                try (final BufferedReader reader = Files.newBufferedReader(this.file)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith("#")) {
+                            continue;
+                        }
+                        final String[] split = line.split("\t");
+                        if (split.length != 8) {
+                            continue;
+                        }
+                        this.stats.put(split[0], Stats.deserialize(split));
+                    }
+                } catch (final IOException | NumberFormatException ex) {
+                    // Only an optimization, start over if it's unreadable
+                    this.stats.clear();
+                    this.dirty.set(true);
+                }
+            }
+            this.loaded = true;
+        }
+    }
+
+    private static final class Stats {
+        private double latencyMillis = -1;
+        private long successes;
+        private long failures;
+        private long timeouts;
+        private int consecutiveFailures;
+        private int openCount;
+        private long openUntil;
+
+        synchronized boolean available(final long now) {
+            return now >= this.openUntil;
+        }
+
+        synchronized void success(final long latency) {
+            this.latencyMillis = this.latencyMillis < 0 ? latency : EWMA_WEIGHT * latency + (1 - EWMA_WEIGHT) * this.latencyMillis;
+            this.successes++;
+            this.consecutiveFailures = 0;
+            this.openCount = 0;
+            this.openUntil = 0;
+        }
+
+        synchronized void reachable() {
+            this.consecutiveFailures = 0;
+            this.openCount = 0;
+            this.openUntil = 0;
+        }
+
+        synchronized void failure(final boolean timeout, final long now) {
+            this.failures++;
+            if (timeout) {
+                this.timeouts++;
+            }
+            this.consecutiveFailures++;
+            // Re-open immediately when a half-open trial fails
+            if (this.consecutiveFailures >= FAILURE_THRESHOLD && now >= this.openUntil) {
+                final long cooldown = Math.min(BASE_COOLDOWN.toMillis() << Math.min(this.openCount, 16), MAX_COOLDOWN.toMillis());
+                this.openCount++;
+                this.openUntil = now + cooldown;
+            }
+        }
+
+        /**
+         * Get the rank key, lower is better.
+         *
+         * @return rank key, or {@code -1} when there are no measurements
+         */
+        synchronized long rankKey() {
+            if (this.latencyMillis < 0) {
+                return -1;
+            }
+            final long total = this.successes + this.failures;
+            final double errorRate = total == 0 ? 0 : (double) this.failures / total;
+            final double adjusted = this.latencyMillis / Math.max(0.1, 1 - errorRate);
+            return (long) adjusted / LATENCY_BUCKET_MILLIS;
+        }
+
+        synchronized String serialize() {
+            return String.join(
+                "\t",
+                String.valueOf((long) this.latencyMillis),
+                String.valueOf(this.successes),
+                String.valueOf(this.failures),
+                String.valueOf(this.timeouts),
+                String.valueOf(this.consecutiveFailures),
+                String.valueOf(this.openCount),
+                String.valueOf(this.openUntil)
+            );
+        }
+
+        static Stats deserialize(final String[] split) {
+            final Stats stats = new Stats();
+            stats.latencyMillis = Long.parseLong(split[1]);
+            stats.successes = Long.parseLong(split[2]);
+            stats.failures = Long.parseLong(split[3]);
+            stats.timeouts = Long.parseLong(split[4]);
+            stats.consecutiveFailures = Integer.parseInt(split[5]);
+            stats.openCount = Integer.parseInt(split[6]);
+            stats.openUntil = Long.parseLong(split[7]);
+            return stats;
+        }
+    }
+}
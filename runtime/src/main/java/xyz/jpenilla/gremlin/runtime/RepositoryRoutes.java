@@ -0,0 +1,205 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Routing table learned from past resolutions, recording which repository served artifacts
+ * of each {@code group:name} (and {@code group}) prefix, as well as which repositories didn't
+ * have them.
+ *
+ * <p>Stored as a tab separated text file so it can be inspected by hand.</p>
+ */
+@NullMarked
+final class RepositoryRoutes {
+    private static final String FILE_NAME = "repository-routes.txt";
+    private static final String HIT = "hit";
+    private static final String MISS = "miss";
+    static final Duration HIT_TTL = Duration.ofDays(30);
+    static final Duration MISS_TTL = Duration.ofDays(1);
+
+    private final Path file;
+    private final Map<Key, Long> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private volatile boolean loaded = false;
+
+    RepositoryRoutes(final Path metadataDirectory) {
+        this.file = metadataDirectory.resolve(FILE_NAME);
+    }
+
+    /**
+     * Order {@code repositories} for resolving {@code dependency}. Repositories known to have served
+     * the artifact come first, followed by those that served other artifacts from the same group, then
+     * unknown repositories, and finally repositories known not to have the artifact. The order is otherwise
+     * kept stable.
+     *
+     * @param dependency   dependency
+     * @param repositories configured repositories
+     * @return ordered repositories
+     */
+    List<String> order(final Dependency dependency, final List<String> repositories) {
+        this.load();
+        final long now = System.currentTimeMillis();
+        final String artifact = artifactPrefix(dependency);
+        final String group = dependency.group();
+        final List<String> artifactHits = new ArrayList<>();
+        final List<String> groupHits = new ArrayList<>();
+        final List<String> unknown = new ArrayList<>();
+        final List<String> misses = new ArrayList<>();
+        for (final String repository : repositories) {
+            if (this.fresh(new Key(HIT, artifact, repository), HIT_TTL, now)) {
+                artifactHits.add(repository);
+            } else if (this.fresh(new Key(MISS, artifact, repository), MISS_TTL, now)) {
+                misses.add(repository);
+            } else if (this.fresh(new Key(HIT, group, repository), HIT_TTL, now)) {
+                groupHits.add(repository);
+            } else {
+                unknown.add(repository);
+            }
+        }
+        final List<String> ordered = new ArrayList<>(repositories.size());
+        ordered.addAll(artifactHits);
+        ordered.addAll(groupHits);
+        ordered.addAll(unknown);
+        ordered.addAll(misses);
+        return ordered;
+    }
+
+    void recordHit(final Dependency dependency, final String repository) {
+        this.load();
+        final long now = System.currentTimeMillis();
+        this.entries.remove(new Key(MISS, artifactPrefix(dependency), repository));
+        this.entries.put(new Key(HIT, artifactPrefix(dependency), repository), now);
+        this.entries.put(new Key(HIT, dependency.group(), repository), now);
+        this.dirty.set(true);
+    }
+
+    void recordMiss(final Dependency dependency, final String repository) {
+        this.load();
+        this.entries.remove(new Key(HIT, artifactPrefix(dependency), repository));
+        this.entries.put(new Key(MISS, artifactPrefix(dependency), repository), System.currentTimeMillis());
+        this.dirty.set(true);
+    }
+
+    /**
+     * Get the non-expired positive routes, mapping {@code group} and {@code group:name} prefixes to
+     * the repositories that served them.
+     *
+     * @return known routes
+     */
+    Map<String, List<String>> knownRoutes() {
+        this.load();
+        final long now = System.currentTimeMillis();
+        final Map<String, List<String>> routes = new TreeMap<>();
+        this.entries.forEach((key, time) -> {
+            if (key.kind().equals(HIT) && now - time <= HIT_TTL.toMillis()) {
+                routes.computeIfAbsent(key.prefix(), $ -> new ArrayList<>()).add(key.repository());
+            }
+        });
+        routes.replaceAll(($, list) -> List.copyOf(list));
+        return Collections.unmodifiableMap(routes);
+    }
+
+    /**
+     * Write the table to disk if it was modified, dropping expired entries.
+     */
+    synchronized void save() {
+        if (!this.dirty.compareAndSet(true, false)) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        try {
+            final Path tmp = Files.createTempFile(Util.mkParentDirs(this.file).getParent(), FILE_NAME, ".tmp");
+            try (final BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                writer.write("# kind\tprefix\trepository\ttimestamp");
+                writer.newLine();
+                for (final Map.Entry<Key, Long> e : this.entries.entrySet()) {
+                    final Key key = e.getKey();
+                    if (!this.fresh(key, key.kind().equals(HIT) ? HIT_TTL : MISS_TTL, now)) {
+                        continue;
+                    }
+                    writer.write(String.join("\t", key.kind(), key.prefix(), key.repository(), String.valueOf(e.getValue())));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            this.dirty.set(true);
+            throw Util.rethrow(ex);
+        }
+    }
+
+    private boolean fresh(final Key key, final Duration ttl, final long now) {
+        final @Nullable Long time = this.entries.get(key);
+        return time != null && now - time <= ttl.toMillis();
+    }
+
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (this.loaded) {
+                return;
+            }
+            if (Files.isRegularFile(this.file)) {
+                try (final BufferedReader reader = Files.newBufferedReader(this.file)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith("#")) {
+                            continue;
+                        }
+                        final String[] split = line.split("\t");
+                        if (split.length != 4 || !(split[0].equals(HIT) || split[0].equals(MISS))) {
+                            continue;
+                        }
+                        this.entries.put(new Key(split[0], split[1], split[2]), Long.parseLong(split[3]));
+                    }
+                } catch (final IOException | NumberFormatException ex) {
+                    // Only an optimization, start over if it's unreadable
+                    this.entries.clear();
+                    this.dirty.set(true);
+                }
+            }
+            this.loaded = true;
+        }
+    }
+
+    private static String artifactPrefix(final Dependency dependency) {
+        return dependency.group() + ':' + dependency.name();
+    }
+
+    private record Key(String kind, String prefix, String repository) {}
+}
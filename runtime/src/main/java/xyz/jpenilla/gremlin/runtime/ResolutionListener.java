@@ -0,0 +1,69 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.nio.file.Path;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Receives each dependency of a {@link DependencySet} as soon as its file is final, while the rest of
+ * the set may still be resolving. This allows, for example, appending core libraries to the classpath
+ * before large optional ones have finished downloading.
+ *
+ * @see DependencyResolver#resolve(DependencySet, DependencyCache, ResolutionListener)
+ */
+@FunctionalInterface
+@NullMarked
+public interface ResolutionListener {
+    /**
+     * Called once for each successfully resolved dependency, with the same path that will be in the
+     * {@link ResolvedDependencySet}. May be called concurrently from multiple threads.
+     *
+     * <p>Exceptions thrown by the listener fail the resolution of {@code dependency}.</p>
+     *
+     * @param dependency dependency
+     * @param path       resolved (and processed) file
+     */
+    void resolved(Dependency dependency, Path path);
+
+    /**
+     * Whether {@code dependency} is critical. Critical dependencies are scheduled before all others,
+     * so that they are reported as early as possible.
+     *
+     * <p>Defaults to {@code false} for all dependencies.</p>
+     *
+     * @param dependency dependency
+     * @return whether the dependency is critical
+     */
+    default boolean critical(final Dependency dependency) {
+        return false;
+    }
+
+    /**
+     * Called after each call to {@link #resolved(Dependency, Path)} with the progress of the whole set,
+     * weighted by the {@link Dependency#size() size} of each dependency. Dependencies of unknown size
+     * don't count towards either value.
+     *
+     * <p>Does nothing by default.</p>
+     *
+     * @param completedBytes total size of the dependencies resolved so far
+     * @param totalBytes     total size of all dependencies in the set
+     */
+    default void progress(final long completedBytes, final long totalBytes) {
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.logging.GremlinLogger;
+
+/**
+ * Runs the tasks of a single {@code resolve} call.
+ *
+ * <p>Closing the scope rejects new tasks, skips tasks that haven't started yet, interrupts the ones still
+ * running, and waits for them to exit, so that no work outlives the call that started it.</p>
+ */
+@NullMarked
+final class ResolutionScope implements Executor, AutoCloseable {
+    // Tasks only block on interruptible waits, this is a safety net for misbehaving jar processors
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Executor executor;
+    private final @Nullable ExecutorService ownedExecutor;
+    private final GremlinLogger logger;
+    private final Set<Thread> running = new HashSet<>();
+    private boolean closed = false;
+
+    ResolutionScope(final Executor executor, final @Nullable ExecutorService ownedExecutor, final GremlinLogger logger) {
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+        this.logger = logger;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        synchronized (this) {
+            if (this.closed) {
+                throw new RejectedExecutionException("Scope is closed");
+            }
+        }
+        this.executor.execute(() -> {
+            final Thread thread = Thread.currentThread();
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.running.add(thread);
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    this.running.remove(thread);
+                    if (this.closed) {
+                        // Don't leak our interrupt into the next task of a caller-provided executor
+                        Thread.interrupted();
+                    }
+                    this.notifyAll();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        synchronized (this) {
+            this.closed = true;
+            this.running.forEach(Thread::interrupt);
+            final long deadline = System.nanoTime() + CLOSE_TIMEOUT.toNanos();
+            while (!this.running.isEmpty()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    this.logger.warn(this.running.size() + " resolution task(s) did not exit within " + CLOSE_TIMEOUT + " of being cancelled");
+                    break;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdownNow();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * JVM-wide state for resolvers built with {@link DependencyResolver.Builder#shared(boolean)}.
+ *
+ * <p>Like {@link DownloadBudget}, the state is {@link JvmWideState JVM-wide state} using only JDK types, so
+ * that it is shared with copies of gremlin loaded by other class loaders (i.e. shaded into other plugins).
+ * For the same reason, nothing in it may reference classes of a particular copy, which would keep its
+ * class loader alive.</p>
+ */
+@NullMarked
+final class SharedResolution {
+    private static final String STATE_NAME = "sharedResolution.v1";
+    private static final String HTTP_CLIENT = "httpClient";
+    private static final String EXECUTOR = "executor";
+    private static final String ARTIFACTS = "artifacts";
+    private static final int PARALLELISM = 16;
+
+    private SharedResolution() {
+    }
+
+    /**
+     * Get the shared HTTP client, creating it with {@code factory} if this is the first shared resolver.
+     *
+     * @param factory client factory, must only use JDK types
+     * @return shared client
+     */
+    static HttpClient httpClient(final Supplier<HttpClient> factory) {
+        return (HttpClient) state().computeIfAbsent(HTTP_CLIENT, $ -> factory.get());
+    }
+
+    /**
+     * Get the shared executor. Its threads are daemon threads created by the JDK, and exit when idle.
+     *
+     * @return shared executor
+     */
+    static Executor executor() {
+        return (Executor) state().computeIfAbsent(EXECUTOR, $ -> new ForkJoinPool(PARALLELISM));
+    }
+
+    @SuppressWarnings("unchecked")
+    static InFlightArtifacts artifacts() {
+        return new InFlightArtifacts((ConcurrentMap<String, CompletableFuture<Path>>) state().computeIfAbsent(ARTIFACTS, $ -> new ConcurrentHashMap<>()));
+    }
+
+    private static Map<String, Object> state() {
+        return JvmWideState.get(STATE_NAME);
+    }
+}
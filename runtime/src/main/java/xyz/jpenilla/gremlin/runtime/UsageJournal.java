@@ -0,0 +1,324 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Append-only journal recording when each file in a {@link DependencyCache} was last used.
+ *
+ * <p>Uses are collected in memory and appended in a single write when the cache's metadata is
+ * saved, once per resolution. The journal is replayed into an in-memory index, which cleanup uses
+ * instead of walking the cache. Other processes' appends are picked up incrementally, by reading
+ * from where the last read stopped. When the journal has grown to several times the number of live
+ * entries, it is compacted to one line per entry.</p>
+ *
+ * <p>Appends and compaction are done while holding the exclusive {@link ArtifactLocks artifact lock}
+ * for the journal file, and the journal is only ever replaced atomically.</p>
+ */
+@NullMarked
+final class UsageJournal {
+    private static final String FILE_NAME = "usage-journal.txt";
+    private static final String LEGACY_SUFFIX = ".last-used.txt";
+    private static final String LEGACY_MARKER = "legacy-last-used";
+    private static final int COMPACTION_FACTOR = 4;
+    private static final int MIN_COMPACTION_LINES = 1024;
+
+    private final Path cacheDirectory;
+    private final Path file;
+    private final Path legacyMarker;
+    private final ArtifactLocks locks;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private @Nullable Object readFileKey;
+    private long readOffset;
+    private long lines;
+    private volatile boolean loaded = false;
+
+    UsageJournal(final Path cacheDirectory, final Path metadataDirectory, final ArtifactLocks locks) {
+        this.cacheDirectory = cacheDirectory;
+        this.file = metadataDirectory.resolve(FILE_NAME);
+        this.legacyMarker = metadataDirectory.resolve(LEGACY_MARKER);
+        this.locks = locks;
+    }
+
+    /**
+     * Record a use of {@code path}. Nothing is written until {@link #save()}.
+     *
+     * @param path used file
+     */
+    void markUsed(final Path path) {
+        final String key = this.key(path);
+        final long now = System.currentTimeMillis();
+        this.pending.merge(key, now, Math::max);
+        this.index.merge(key, now, Math::max);
+    }
+
+    /**
+     * Get when {@code path} was last used, including uses recorded by other processes up to the
+     * last {@link #refresh()}.
+     *
+     * @param path file
+     * @return last use in epoch millis, or {@code -1} if unknown
+     */
+    long lastUsed(final Path path) {
+        this.ensureLoaded();
+        final @Nullable Long lastUsed = this.index.get(this.key(path));
+        return lastUsed == null ? -1 : lastUsed;
+    }
+
+    /**
+     * Get every known file, mapped to when it was last used.
+     *
+     * @return paths and last uses
+     */
+    Map<Path, Long> entries() {
+        this.ensureLoaded();
+        final Map<Path, Long> entries = new HashMap<>();
+        this.index.forEach((key, lastUsed) -> entries.put(this.cacheDirectory.resolve(key), lastUsed));
+        return entries;
+    }
+
+    void remove(final Path path) {
+        final String key = this.key(path);
+        this.index.remove(key);
+        this.pending.remove(key);
+    }
+
+    /**
+     * Append pending uses to the journal, compacting it if it has grown too large.
+     */
+    synchronized void save() {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        try {
+            final ArtifactLocks.Lock lock = this.locks.acquire(this.file, false);
+            try {
+                this.readNew();
+                final StringBuilder sb = new StringBuilder();
+                int appended = 0;
+                for (final Map.Entry<String, Long> e : new ArrayList<>(this.pending.entrySet())) {
+                    sb.append(e.getValue()).append('\t').append(e.getKey()).append('\n');
+                    this.pending.remove(e.getKey(), e.getValue());
+                    appended++;
+                }
+                if (this.lines + appended > Math.max(MIN_COMPACTION_LINES, (long) COMPACTION_FACTOR * this.index.size())) {
+                    this.rewrite();
+                    return;
+                }
+                try (final FileChannel channel = FileChannel.open(Util.mkParentDirs(this.file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    // Our own lines don't need to be read back
+                    this.readOffset = channel.size();
+                    this.readFileKey = Files.readAttributes(this.file, BasicFileAttributes.class).fileKey();
+                }
+                this.lines += appended;
+            } finally {
+                lock.close();
+            }
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        }
+    }
+
+    /**
+     * Read uses appended by other processes since the last read.
+     */
+    synchronized void refresh() {
+        try {
+            this.loaded = true;
+            this.readNew();
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        }
+    }
+
+    /**
+     * Rewrite the journal with one line per entry, dropping entries that {@code keep} rejects.
+     *
+     * @param keep predicate for entries to keep
+     */
+    synchronized void compact(final Predicate<Path> keep) {
+        try {
+            final ArtifactLocks.Lock lock = this.locks.acquire(this.file, false);
+            try {
+                this.readNew();
+                this.pending.clear();
+                this.index.keySet().removeIf(key -> !keep.test(this.cacheDirectory.resolve(key)));
+                this.rewrite();
+            } finally {
+                lock.close();
+            }
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        }
+    }
+
+    /**
+     * Import and delete the per-file {@code .last-used.txt} files written by older versions, which may still be
+     * using the cache. This walks the cache.
+     *
+     * @return the latest use found by this or a previous import, or {@code -1} if there never was one
+     */
+    synchronized long importLegacy() throws IOException {
+        long latest = lastModified(this.legacyMarker);
+        if (!Files.isDirectory(this.cacheDirectory)) {
+            return latest;
+        }
+        final List<Path> legacy;
+        try (final Stream<Path> s = Files.walk(this.cacheDirectory)) {
+            legacy = s.filter(f -> f.getFileName().toString().endsWith(LEGACY_SUFFIX) && Files.isRegularFile(f)).toList();
+        }
+        if (legacy.isEmpty()) {
+            return latest;
+        }
+        long imported = -1;
+        for (final Path f : legacy) {
+            final String name = f.getFileName().toString();
+            final Path used = f.resolveSibling(name.substring(0, name.length() - LEGACY_SUFFIX.length()));
+            try {
+                final long lastUsed = Long.parseLong(Files.readString(f).trim());
+                this.pending.merge(this.key(used), lastUsed, Math::max);
+                this.index.merge(this.key(used), lastUsed, Math::max);
+                imported = Math.max(imported, lastUsed);
+            } catch (final NoSuchFileException | NumberFormatException ex) {
+                // Concurrently deleted or being written
+            }
+        }
+        this.save();
+        if (imported > latest) {
+            // Remember the use after deleting the files it was recorded in
+            if (!Files.exists(this.legacyMarker)) {
+                Files.writeString(Util.mkParentDirs(this.legacyMarker), "");
+            }
+            Files.setLastModifiedTime(this.legacyMarker, FileTime.fromMillis(imported));
+            latest = imported;
+        }
+        for (final Path f : legacy) {
+            Files.deleteIfExists(f);
+        }
+        return latest;
+    }
+
+    private void ensureLoaded() {
+        if (this.loaded) {
+            return;
+        }
+        this.refresh();
+    }
+
+    /**
+     * Replay lines that haven't been read yet, starting over when the journal was replaced by a compaction.
+     * Incomplete trailing lines are left for the next read.
+     */
+    private void readNew() throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(this.file, BasicFileAttributes.class);
+        } catch (final NoSuchFileException ex) {
+            return;
+        }
+        if (!Objects.equals(attributes.fileKey(), this.readFileKey) || attributes.size() < this.readOffset) {
+            this.readOffset = 0;
+            this.lines = 0;
+        }
+        if (attributes.size() == this.readOffset) {
+            return;
+        }
+        final byte[] bytes;
+        try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - this.readOffset));
+            while (buffer.hasRemaining() && channel.read(buffer, this.readOffset + buffer.position()) != -1) {
+                // Keep reading
+            }
+            bytes = buffer.array();
+        }
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            this.replay(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+            start = i + 1;
+            this.lines++;
+        }
+        this.readOffset += start;
+        this.readFileKey = attributes.fileKey();
+    }
+
+    private void replay(final String line) {
+        final int tab = line.indexOf('\t');
+        if (tab == -1) {
+            return;
+        }
+        try {
+            this.index.merge(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)), Math::max);
+        } catch (final NumberFormatException ex) {
+            // Skip the damaged line
+        }
+    }
+
+    private void rewrite() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        this.index.forEach((key, lastUsed) -> sb.append(lastUsed).append('\t').append(key).append('\n'));
+        final Path tmp = Files.createTempFile(Util.mkParentDirs(this.file).getParent(), FILE_NAME, ".tmp");
+        Files.writeString(tmp, sb);
+        Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.readOffset = Files.size(this.file);
+        this.readFileKey = Files.readAttributes(this.file, BasicFileAttributes.class).fileKey();
+        this.lines = this.index.size();
+    }
+
+    private static long lastModified(final Path path) throws IOException {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (final NoSuchFileException ex) {
+            return -1;
+        }
+    }
+
+    private String key(final Path path) {
+        return this.cacheDirectory.toAbsolutePath().relativize(path.toAbsolutePath()).toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.HashResult;
+import xyz.jpenilla.gremlin.runtime.util.HashingAlgorithm;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Index of files in a {@link DependencyCache} that have already had their hashes computed.
+ *
+ * <p>Entries are keyed by path and are only considered valid while the size, modification
+ * time, and file key of the file still match what was recorded, so that unchanged files
+ * don't need to be hashed again on every startup.</p>
+ *
+ * <p>Depending on the {@link CacheIntegrity}, a CRC32C checksum of verified files and the time
+ * they were last verified are recorded as well, so that cache hits can cheaply check the
+ * contents and only repeat the full verification periodically.</p>
+ */
+@NullMarked
+final class VerifiedHashIndex {
+    private static final String FILE_NAME = "verified-hashes.txt";
+    private static final String NONE = "-";
+
+    private final Path cacheDirectory;
+    private final Path indexFile;
+    private final CacheIntegrity integrity;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private volatile boolean loaded = false;
+
+    VerifiedHashIndex(final Path cacheDirectory, final Path metadataDirectory, final CacheIntegrity integrity) {
+        this.cacheDirectory = cacheDirectory;
+        this.integrity = integrity;
+        this.indexFile = metadataDirectory.resolve(FILE_NAME);
+    }
+
+    /**
+     * Hash {@code file} with {@link HashingAlgorithm#SHA256}, or reuse the indexed hash if the
+     * file is unchanged according to the {@link CacheIntegrity}.
+     *
+     * @param file file
+     * @return file with hashes
+     * @throws IOException on I/O error
+     */
+    FileWithHashes hashSha256(final Path file) throws IOException {
+        final @Nullable Entry entry = this.entry(file);
+        if (entry != null && entry.sha256() != null && this.unchanged(file, entry)) {
+            return new FileWithHashes(file, hashResult(entry.sha256()), entry.sha1() == null ? null : hashResult(entry.sha1()));
+        }
+        final MessageDigest digest = HashingAlgorithm.SHA256.digest();
+        final CRC32C crc = new CRC32C();
+        read(file, buffer -> {
+            digest.update(buffer.duplicate());
+            crc.update(buffer);
+        });
+        final HashResult sha256 = new HashResult(digest.digest());
+        // Keep the SHA-1 when the contents turned out to be unchanged
+        final @Nullable HashResult sha1 = entry != null && entry.sha1() != null && sha256.asHexString().equals(entry.sha256())
+            ? hashResult(entry.sha1())
+            : null;
+        this.put(file, sha256, sha1, crcString(crc));
+        return new FileWithHashes(file, sha256, sha1);
+    }
+
+    private boolean unchanged(final Path file, final Entry entry) throws IOException {
+        return switch (this.integrity.mode()) {
+            case METADATA -> true;
+            case FULL -> false;
+            case FAST_CHECKSUM -> entry.crc32c() != null
+                && System.currentTimeMillis() - entry.verifiedAt() < this.integrity.fullVerificationInterval().toMillis()
+                && entry.crc32c().equals(crc32c(file));
+        };
+    }
+
+    /**
+     * Get the {@link HashingAlgorithm#SHA1} hash of {@code file}, computing and indexing it only
+     * when it isn't already known.
+     *
+     * @param file file
+     * @return SHA-1 hash
+     * @throws IOException on I/O error
+     */
+    HashResult sha1(final FileWithHashes file) throws IOException {
+        final @Nullable HashResult known = file.sha1();
+        if (known != null) {
+            return known;
+        }
+        return this.sha1(file.path());
+    }
+
+    HashResult sha1(final Path file) throws IOException {
+        final @Nullable Entry entry = this.entry(file);
+        if (entry != null && entry.sha1() != null) {
+            return hashResult(entry.sha1());
+        }
+        final HashResult sha1 = HashingAlgorithm.SHA1.hashFile(file);
+        if (entry != null) {
+            this.entries.put(this.key(file), entry.withSha1(sha1.asHexString()));
+            this.dirty.set(true);
+        } else {
+            this.record(file, null, sha1);
+        }
+        return sha1;
+    }
+
+    /**
+     * Record the hashes of {@code file}, replacing any existing entry. When the SHA-256 hash is
+     * provided, the file must have just been verified against it.
+     *
+     * @param file   file
+     * @param sha256 SHA-256 hash, if known
+     * @param sha1   SHA-1 hash, if known
+     * @throws IOException on I/O error
+     */
+    void record(final Path file, final @Nullable HashResult sha256, final @Nullable HashResult sha1) throws IOException {
+        // The file was just written, so reading it again is cheap
+        final @Nullable String crc = sha256 != null && this.integrity.mode() == CacheIntegrity.Mode.FAST_CHECKSUM ? crc32c(file) : null;
+        this.put(file, sha256, sha1, crc);
+    }
+
+    private void put(
+        final Path file,
+        final @Nullable HashResult sha256,
+        final @Nullable HashResult sha1,
+        final @Nullable String crc32c
+    ) throws IOException {
+        this.load();
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        this.entries.put(this.key(file), new Entry(
+            attributes.size(),
+            attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+            fileKey(attributes),
+            sha256 == null ? null : sha256.asHexString(),
+            sha1 == null ? null : sha1.asHexString(),
+            crc32c,
+            sha256 == null ? 0 : System.currentTimeMillis()
+        ));
+        this.dirty.set(true);
+    }
+
+    void remove(final Path file) {
+        this.load();
+        if (this.entries.remove(this.key(file)) != null) {
+            this.dirty.set(true);
+        }
+    }
+
+    /**
+     * Write the index to disk if it has been modified since it was loaded or last saved.
+     */
+    synchronized void save() {
+        if (!this.dirty.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            final Path tmp = Files.createTempFile(Util.mkParentDirs(this.indexFile).getParent(), FILE_NAME, ".tmp");
+            try (final BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                for (final Map.Entry<String, Entry> e : this.entries.entrySet()) {
+                    final Entry entry = e.getValue();
+                    writer.write(String.join(
+                        "\t",
+                        e.getKey(),
+                        String.valueOf(entry.size()),
+                        String.valueOf(entry.lastModified()),
+                        orNone(entry.fileKey()),
+                        orNone(entry.sha256()),
+                        orNone(entry.sha1()),
+                        orNone(entry.crc32c()),
+                        String.valueOf(entry.verifiedAt())
+                    ));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            this.dirty.set(true);
+            throw Util.rethrow(ex);
+        }
+    }
+
+    private @Nullable Entry entry(final Path file) throws IOException {
+        this.load();
+        final String key = this.key(file);
+        final @Nullable Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (final NoSuchFileException ex) {
+            this.remove(file);
+            return null;
+        }
+        if (attributes.size() != entry.size()
+            || attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) != entry.lastModified()
+            || !Objects.equals(fileKey(attributes), entry.fileKey())) {
+            this.entries.remove(key, entry);
+            this.dirty.set(true);
+            return null;
+        }
+        return entry;
+    }
+
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (this.loaded) {
+                return;
+            }
+            if (Files.isRegularFile(this.indexFile)) {
+                try (final BufferedReader reader = Files.newBufferedReader(this.indexFile)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        final String[] split = line.split("\t");
+                        // Entries written before checksums were recorded have 6 columns
+                        if ((split.length != 6 && split.length != 8) || !validHash(split[4]) || !validHash(split[5])) {
+                            continue;
+                        }
+                        this.entries.put(split[0], new Entry(
+                            Long.parseLong(split[1]),
+                            Long.parseLong(split[2]),
+                            noneToNull(split[3]),
+                            noneToNull(split[4]),
+                            noneToNull(split[5]),
+                            split.length == 8 ? noneToNull(split[6]) : null,
+                            split.length == 8 ? Long.parseLong(split[7]) : 0
+                        ));
+                    }
+                } catch (final IOException | NumberFormatException ex) {
+                    // The index is only an optimization, start over if it's unreadable
+                    this.entries.clear();
+                    this.dirty.set(true);
+                }
+            }
+            this.loaded = true;
+        }
+    }
+
+    private String key(final Path file) {
+        return this.cacheDirectory.toAbsolutePath().relativize(file.toAbsolutePath()).toString().replace('\\', '/');
+    }
+
+    private static @Nullable String fileKey(final BasicFileAttributes attributes) {
+        final @Nullable Object key = attributes.fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    private static String crc32c(final Path file) throws IOException {
+        final CRC32C crc = new CRC32C();
+        read(file, crc::update);
+        return crcString(crc);
+    }
+
+    private static String crcString(final CRC32C crc) {
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static void read(final Path file, final Consumer<ByteBuffer> consumer) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                consumer.accept(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static HashResult hashResult(final String hex) {
+        return new HashResult(Util.fromHexString(hex));
+    }
+
+    private static String orNone(final @Nullable String s) {
+        return s == null ? NONE : s;
+    }
+
+    private static boolean validHash(final String s) {
+        if (s.equals(NONE)) {
+            return true;
+        }
+        try {
+            Util.fromHexString(s);
+            return true;
+        } catch (final IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static @Nullable String noneToNull(final String s) {
+        return s.equals(NONE) ? null : s;
+    }
+
+    private record Entry(
+        long size,
+        long lastModified,
+        @Nullable String fileKey,
+        @Nullable String sha256,
+        @Nullable String sha1,
+        @Nullable String crc32c,
+        long verifiedAt
+    ) {
+        Entry withSha1(final String sha1) {
+            return new Entry(this.size, this.lastModified, this.fileKey, this.sha256, sha1, this.crc32c, this.verifiedAt);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * gremlin
+ *
+ * Copyright (c) 2025 Jason Penilla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.jpenilla.gremlin.runtime;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import xyz.jpenilla.gremlin.runtime.util.Util;
+
+/**
+ * Manifests recording the final result of resolving a {@link DependencySet}, keyed
+ * by {@link DependencySet#fingerprint()}.
+ *
+ * <p>When nothing changed since the manifest was written, the result can be restored
+ * with a single file read and a stat per file, without resolving or processing anything.</p>
+ */
+@NullMarked
+final class WarmStartManifests {
+    private static final String DIRECTORY = "manifests";
+    private static final String EXTENSION = ".txt";
+    private static final String HEADER = "gremlin-manifest v1";
+
+    private final Path cacheDirectory;
+    private final Path directory;
+
+    WarmStartManifests(final Path cacheDirectory, final Path metadataDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.directory = metadataDirectory.resolve(DIRECTORY);
+    }
+
+    /**
+     * Read the manifest for {@code dependencySet}, if one exists and every file it references
+     * is unchanged.
+     *
+     * @param dependencySet dependency set
+     * @param fingerprint   fingerprint of {@code dependencySet}
+     * @return manifest, or {@code null} when a full resolution is required
+     */
+    @Nullable Manifest read(final DependencySet dependencySet, final String fingerprint) {
+        final Path file = this.file(fingerprint);
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(file);
+        } catch (final IOException ex) {
+            return null;
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            return null;
+        }
+
+        final List<Dependency> dependencies = dependencySet.dependencies();
+        final Map<Dependency, Path> resolved = new HashMap<>();
+        final List<Path> files = new ArrayList<>();
+        int dependencyLines = 0;
+        try {
+            for (final String line : lines.subList(1, lines.size())) {
+                final String[] split = line.split("\t");
+                if (split.length != 4) {
+                    return null;
+                }
+                final Path path = this.cacheDirectory.resolve(split[1]);
+                if (!unchanged(path, Long.parseLong(split[2]), Long.parseLong(split[3]))) {
+                    return null;
+                }
+                if (split[0].equals("file")) {
+                    files.add(path);
+                } else {
+                    final int idx = Integer.parseInt(split[0]);
+                    if (idx < 0 || idx >= dependencies.size()) {
+                        return null;
+                    }
+                    resolved.put(dependencies.get(idx), path);
+                    files.add(path);
+                    dependencyLines++;
+                }
+            }
+        } catch (final IOException | RuntimeException ex) {
+            return null;
+        }
+        if (dependencyLines != dependencies.size()) {
+            return null;
+        }
+
+        try {
+            // Track manifest usage for cleanup
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException ignore) {
+        }
+        return new Manifest(new ResolvedDependencySet(Map.copyOf(resolved)), List.copyOf(files));
+    }
+
+    /**
+     * Write the manifest for {@code dependencySet}.
+     *
+     * @param dependencySet dependency set
+     * @param fingerprint   fingerprint of {@code dependencySet}
+     * @param resolved      resolution result
+     * @param extraFiles    other files in the cache the result depends on, i.e. unprocessed jars and extension dependencies
+     */
+    void write(
+        final DependencySet dependencySet,
+        final String fingerprint,
+        final ResolvedDependencySet resolved,
+        final Collection<Path> extraFiles
+    ) {
+        final Path file = this.file(fingerprint);
+        @Nullable Path tmp = null;
+        try {
+            tmp = Files.createTempFile(Util.mkParentDirs(file).getParent(), fingerprint, ".tmp");
+            try (final BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                writer.write(HEADER);
+                writer.newLine();
+                final List<Dependency> dependencies = dependencySet.dependencies();
+                for (int i = 0; i < dependencies.size(); i++) {
+                    final @Nullable Path path = resolved.map().get(dependencies.get(i));
+                    if (path == null) {
+                        throw new IllegalArgumentException("Missing result for " + dependencies.get(i));
+                    }
+                    this.writeLine(writer, String.valueOf(i), path);
+                }
+                for (final Path extra : extraFiles) {
+                    if (!resolved.map().containsValue(extra)) {
+                        this.writeLine(writer, "file", extra);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            throw Util.rethrow(ex);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * List every cache file the manifest for {@code fingerprint} references, whether or not they are unchanged.
+     *
+     * @param fingerprint dependency set fingerprint
+     * @return referenced files, or {@code null} if there is no readable manifest
+     */
+    @Nullable List<Path> files(final String fingerprint) {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(this.file(fingerprint));
+        } catch (final IOException ex) {
+            return null;
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            return null;
+        }
+        final List<Path> files = new ArrayList<>();
+        for (final String line : lines.subList(1, lines.size())) {
+            final String[] split = line.split("\t");
+            if (split.length != 4) {
+                return null;
+            }
+            files.add(this.cacheDirectory.resolve(split[1]));
+        }
+        return files;
+    }
+
+    /**
+     * List the fingerprints of manifests written or read within the last {@code maxAgeMillis}, which are
+     * the dependency sets resolved in that time.
+     *
+     * @param maxAgeMillis max age
+     * @return fingerprints
+     * @throws IOException on I/O error
+     */
+    Set<String> usedWithin(final long maxAgeMillis) throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return Set.of();
+        }
+        final long now = System.currentTimeMillis();
+        final Set<String> fingerprints = new HashSet<>();
+        try (final Stream<Path> s = Files.list(this.directory)) {
+            for (final Path f : s.toList()) {
+                final String name = f.getFileName().toString();
+                if (!name.endsWith(EXTENSION)) {
+                    continue;
+                }
+                try {
+                    if (now - Files.getLastModifiedTime(f).toMillis() <= maxAgeMillis) {
+                        fingerprints.add(name.substring(0, name.length() - EXTENSION.length()));
+                    }
+                } catch (final NoSuchFileException ex) {
+                    // Concurrently deleted
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Delete manifests that haven't been written or read for {@code maxAgeMillis}, except those of
+     * {@code keep}.
+     *
+     * @param maxAgeMillis max age
+     * @param keep         fingerprints of manifests to keep regardless of age
+     * @throws IOException on I/O error
+     */
+    void cleanup(final long maxAgeMillis, final Set<String> keep) throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        try (final Stream<Path> s = Files.list(this.directory)) {
+            for (final Path f : s.toList()) {
+                final String name = f.getFileName().toString();
+                if (name.endsWith(EXTENSION) && keep.contains(name.substring(0, name.length() - EXTENSION.length()))) {
+                    continue;
+                }
+                if (now - Files.getLastModifiedTime(f).toMillis() > maxAgeMillis) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+    }
+
+    private void writeLine(final BufferedWriter writer, final String kind, final Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        writer.write(String.join(
+            "\t",
+            kind,
+            this.cacheDirectory.toAbsolutePath().relativize(path.toAbsolutePath()).toString().replace('\\', '/'),
+            String.valueOf(attributes.size()),
+            String.valueOf(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+        ));
+        writer.newLine();
+    }
+
+    private static boolean unchanged(final Path path, final long size, final long lastModified) throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (final NoSuchFileException ex) {
+            return false;
+        }
+        return attributes.isRegularFile()
+            && attributes.size() == size
+            && attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) == lastModified;
+    }
+
+    private Path file(final String fingerprint) {
+        return this.directory.resolve(fingerprint + EXTENSION);
+    }
+
+    /**
+     * A restored resolution result.
+     *
+     * @param result result
+     * @param files  every cache file the result depends on
+     */
+    record Manifest(ResolvedDependencySet result, List<Path> files) {}
+}
@@ -20,6 +20,7 @@ package xyz.jpenilla.gremlin.runtime.platformsupport;
 import io.papermc.paper.plugin.loader.PluginClasspathBuilder;
 import io.papermc.paper.plugin.loader.PluginLoader;
 import org.jspecify.annotations.NullMarked;
+import xyz.jpenilla.gremlin.runtime.ArtifactSource;
 import xyz.jpenilla.gremlin.runtime.DependencyCache;
 import xyz.jpenilla.gremlin.runtime.DependencyResolver;
 import xyz.jpenilla.gremlin.runtime.DependencySet;
@@ -29,7 +30,8 @@ import xyz.jpenilla.gremlin.runtime.logging.Slf4jGremlinLogger;
  * Paper {@link PluginLoader} that automatically loads dependencies using
  * {@link DependencySet#readDefault(ClassLoader)}, resolves them to
  * {@code plugins/<plugin_name>/libraries/} using {@link DependencyResolver},
- * and then adds them to the plugin classpath.
+ * and then adds them to the plugin classpath. Artifacts embedded in the plugin
+ * jar (see {@link ArtifactSource#embedded(ClassLoader)}) are used when present.
  *
  * <p>This is provided as a convenience for the common case, and isn't meant to
  * be flexible. If custom behavior is required, a custom {@link PluginLoader}
@@ -39,11 +41,16 @@ import xyz.jpenilla.gremlin.runtime.logging.Slf4jGremlinLogger;
 public final class DefaultsPaperPluginLoader implements PluginLoader {
     @Override
     public void classloader(final PluginClasspathBuilder classpath) {
-        final DependencySet deps = DependencySet.readDefault(this.getClass().getClassLoader());
+        final ClassLoader loader = this.getClass().getClassLoader();
+        final DependencySet deps = DependencySet.readDefault(loader);
         final DependencyCache cache = new DependencyCache(classpath.getContext().getDataDirectory().resolve("libraries"));
-        try (final DependencyResolver downloader = new DependencyResolver(new Slf4jGremlinLogger(classpath.getContext().getLogger()))) {
+        try (final DependencyResolver downloader = DependencyResolver.builder(new Slf4jGremlinLogger(classpath.getContext().getLogger()))
+            .addArtifactSource(ArtifactSource.embedded(loader))
+            .build()) {
             new PaperClasspathAppender(classpath).append(downloader.resolve(deps, cache).jarFiles());
         }
+        // The cache belongs to this plugin, so artifacts of the sets it used before an update can go right away
+        cache.register(classpath.getContext().getConfiguration().getName(), deps);
         cache.cleanup();
     }
 }
@@ -19,6 +19,7 @@ package xyz.jpenilla.gremlin.runtime.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
@@ -56,30 +57,67 @@ public final class MultiAlgorithmHasher {
     }
 
     public HashesMap hash(final InputStream stream) throws IOException {
-        final MessageDigest[] digests = new MessageDigest[this.algorithms.length];
-        for (int i = 0; i < this.algorithms.length; i++) {
-            digests[i] = this.algorithms[i].digest();
-        }
-
+        final Session session = this.newSession();
         final byte[] buffer = new byte[8192];
         while (true) {
             final int count = stream.read(buffer);
             if (count == -1) {
                 break;
             }
-            for (final MessageDigest digest : digests) {
-                digest.update(buffer, 0, count);
+            session.update(buffer, 0, count);
+        }
+        return session.finish();
+    }
+
+    /**
+     * Create a new incremental hashing session, for when the input
+     * isn't available as a single {@link InputStream}.
+     *
+     * @return new session
+     */
+    public Session newSession() {
+        final MessageDigest[] digests = new MessageDigest[this.algorithms.length];
+        for (int i = 0; i < this.algorithms.length; i++) {
+            digests[i] = this.algorithms[i].digest();
+        }
+        return new Session(this.algorithms, digests);
+    }
+
+    public static final class Session {
+        private final HashingAlgorithm[] algorithms;
+        private final MessageDigest[] digests;
+
+        private Session(final HashingAlgorithm[] algorithms, final MessageDigest[] digests) {
+            this.algorithms = algorithms;
+            this.digests = digests;
+        }
+
+        public void update(final byte[] bytes, final int offset, final int length) {
+            for (final MessageDigest digest : this.digests) {
+                digest.update(bytes, offset, length);
             }
         }
 
-        final HashesMap resultMap = new HashesMapImpl(digests.length);
-        for (int i = 0; i < digests.length; i++) {
-            final HashingAlgorithm algo = this.algorithms[i];
-            final MessageDigest digest = digests[i];
-            resultMap.put(algo, new HashResult(digest.digest()));
+        /**
+         * Update all digests with the remaining bytes of {@code buffer}.
+         *
+         * <p>The position of {@code buffer} is not modified.</p>
+         *
+         * @param buffer buffer
+         */
+        public void update(final ByteBuffer buffer) {
+            for (final MessageDigest digest : this.digests) {
+                digest.update(buffer.duplicate());
+            }
         }
 
-        return resultMap;
+        public HashesMap finish() {
+            final HashesMap resultMap = new HashesMapImpl(this.digests.length);
+            for (int i = 0; i < this.digests.length; i++) {
+                resultMap.put(this.algorithms[i], new HashResult(this.digests[i].digest()));
+            }
+            return resultMap;
+        }
     }
 
     public interface HashesMap extends Map<HashingAlgorithm, HashResult> {